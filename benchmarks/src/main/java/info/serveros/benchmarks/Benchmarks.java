@@ -0,0 +1,37 @@
+package info.serveros.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ *  Runs the benchmarks.  Takes the usual JMH command line, but always adds the GC profiler, so every
+ *  result comes with its allocation per operation (gc.alloc.rate.norm) alongside its throughput.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public final class Benchmarks {
+
+    /**
+     *  Not instantiable.
+     */
+    private Benchmarks() {
+    }//Benchmarks()*/
+
+    /**
+     *  Run the benchmarks.
+     *
+     *  @param args JMH command line options - a regular expression selects benchmarks.
+     *
+     *  @throws Exception if the options are bad, or a benchmark fails.
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+    }//main(String[])*/
+}//Benchmarks*/
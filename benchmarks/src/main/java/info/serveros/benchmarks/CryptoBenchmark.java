@@ -0,0 +1,177 @@
+package info.serveros.benchmarks;
+
+import info.serveros.Encrypter.CryptoMessage;
+import info.serveros.OneTimeCredentials;
+import info.serveros.ServerosProvider;
+import info.serveros.algorithms.CipherSpec;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The cryptographic primitives: RSA sealing and signing of a Ticket, and symmetric enciphering of
+ *  a TicketId, for one Cipher from each family.  The bare Cipher benchmarks compare the per-thread
+ *  instance from getCachedInstance against a provider lookup on every call.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CryptoBenchmark {
+
+    /**
+     *  The Cipher under test.
+     */
+    @Param({"aes_128_cbc", "aes_256_cbc", "aes_128_cfb", "aes_128_ofb", "bf_cbc", "des_ede_cbc", "rc2_cbc"})
+    public CipherSpec cipher;
+
+    /**
+     *  Does the work.
+     */
+    private ServerosProvider encrypter;
+
+    /**
+     *  The sample messages.
+     */
+    private Fixtures.Messages messages;
+
+    /**
+     *  A sealed, signed Ticket.
+     */
+    private CryptoMessage sealed;
+
+    /**
+     *  Credentials for enciphering.
+     */
+    private OneTimeCredentials credentials;
+
+    /**
+     *  An enciphered TicketId.
+     */
+    private String enciphered;
+
+    /**
+     *  A TicketId, as bytes.
+     */
+    private byte[] plaintext;
+
+    /**
+     *  Prepare the inputs.
+     *
+     *  @throws Exception if the Cipher is unusable.
+     */
+    @Setup
+    public void setup() throws Exception {
+        this.encrypter = Fixtures.provider();
+        this.messages = new Fixtures.Messages();
+        this.sealed = this.encryptAndSign();
+        this.credentials = new OneTimeCredentials(this.cipher);
+        this.enciphered = this.encipher();
+        this.plaintext = this.messages.ticketId.toJSON().getBytes(StandardCharsets.UTF_8);
+    }//setup()*/
+
+    /**
+     *  Seal and sign a Ticket.
+     *
+     *  @return the sealed Ticket.
+     *
+     *  @throws Exception if sealing fails.
+     */
+    @Benchmark
+    public CryptoMessage encryptAndSign() throws Exception {
+        return this.encrypter.encryptAndSign(Fixtures.PROVIDER.getPublic(), Fixtures.MASTER.getPrivate()
+            , this.messages.ticket, this.cipher, Fixtures.HASH
+        );
+    }//encryptAndSign()*/
+
+    /**
+     *  Open and verify a Ticket.
+     *
+     *  @return the Ticket, as Json.
+     *
+     *  @throws Exception if it doesn't verify.
+     */
+    @Benchmark
+    public JsonObject decryptAndVerify() throws Exception {
+        return this.encrypter.decryptAndVerify(Fixtures.PROVIDER.getPrivate(), Fixtures.MASTER.getPublic(), this.sealed);
+    }//decryptAndVerify()*/
+
+    /**
+     *  Encipher a TicketId.
+     *
+     *  @return the enciphered TicketId.
+     *
+     *  @throws java.security.GeneralSecurityException if enciphering fails.
+     */
+    @Benchmark
+    public String encipher() throws java.security.GeneralSecurityException {
+        return this.encrypter.encipher(this.messages.ticketId, this.credentials);
+    }//encipher()*/
+
+    /**
+     *  Decipher a TicketId.
+     *
+     *  @return the TicketId, as Json.
+     *
+     *  @throws java.security.GeneralSecurityException if deciphering fails.
+     */
+    @Benchmark
+    public JsonObject decipher() throws java.security.GeneralSecurityException {
+        return this.encrypter.decipher(this.enciphered, this.credentials);
+    }//decipher()*/
+
+    /**
+     *  Encipher a TicketId's bytes with this thread's cached Cipher - what encipher does.
+     *
+     *  @return the ciphertext.
+     *
+     *  @throws java.security.GeneralSecurityException if enciphering fails.
+     */
+    @Benchmark
+    public byte[] cachedCipher() throws java.security.GeneralSecurityException {
+        return this.doFinal(this.cipher.getCachedInstance());
+    }//cachedCipher()*/
+
+    /**
+     *  Encipher a TicketId's bytes with a Cipher from Cipher.getInstance - what encipher did before
+     *  Ciphers were cached.
+     *
+     *  @return the ciphertext.
+     *
+     *  @throws java.security.GeneralSecurityException if enciphering fails.
+     */
+    @Benchmark
+    public byte[] uncachedCipher() throws java.security.GeneralSecurityException {
+        return this.doFinal(this.cipher.getInstance());
+    }//uncachedCipher()*/
+
+    /**
+     *  Initialize a Cipher for enciphering, and run the TicketId's bytes through it.
+     *
+     *  @param c the Cipher.
+     *
+     *  @return the ciphertext.
+     *
+     *  @throws java.security.GeneralSecurityException if enciphering fails.
+     */
+    private byte[] doFinal(Cipher c) throws java.security.GeneralSecurityException {
+        c.init(Cipher.ENCRYPT_MODE, this.credentials.getKey(), this.credentials.getIV());
+        return c.doFinal(this.plaintext);
+    }//doFinal(Cipher)*/
+}//CryptoBenchmark*/
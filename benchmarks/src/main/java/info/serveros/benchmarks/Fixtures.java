@@ -0,0 +1,172 @@
+package info.serveros.benchmarks;
+
+import info.serveros.Encrypter.CryptoMessage;
+import info.serveros.OneTimeCredentials;
+import info.serveros.ServerosMaster;
+import info.serveros.ServerosProvider;
+import info.serveros.algorithms.CipherSpec;
+import info.serveros.algorithms.HashSpec;
+import info.serveros.messages.CredentialRequest;
+import info.serveros.messages.CredentialResponse;
+import info.serveros.messages.EncipheredAck;
+import info.serveros.messages.Ticket;
+import info.serveros.messages.TicketAck;
+import info.serveros.messages.TicketId;
+import info.serveros.messages.TicketPresentation;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+import javax.json.Json;
+import javax.json.JsonValue;
+
+/**
+ *  Keys, identities and sample messages shared by the benchmarks.  Keys are generated once per
+ *  JVM, since RSA key generation would otherwise dominate every trial's setup.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+final class Fixtures {
+
+    /**
+     *  The Authentication Master's keys.
+     */
+    static final KeyPair MASTER;
+
+    /**
+     *  The Service Provider's keys.
+     */
+    static final KeyPair PROVIDER;
+
+    /**
+     *  The consumer's keys.
+     */
+    static final KeyPair CONSUMER;
+
+    /**
+     *  The consumer's id.
+     */
+    static final JsonValue CONSUMER_ID = Json.createArrayBuilder().add("consumer").build().get(0);
+
+    /**
+     *  The Service Provider's id.
+     */
+    static final JsonValue PROVIDER_ID = Json.createArrayBuilder().add("provider").build().get(0);
+
+    /**
+     *  The Cipher messages are sealed with.
+     */
+    static final CipherSpec CIPHER = CipherSpec.aes_256_cbc;
+
+    /**
+     *  The Hash messages are signed with.
+     */
+    static final HashSpec HASH = HashSpec.sha256;
+
+    static {
+        try {
+            KeyPairGenerator g = KeyPairGenerator.getInstance("RSA");
+            g.initialize(2048);
+            MASTER = g.generateKeyPair();
+            PROVIDER = g.generateKeyPair();
+            CONSUMER = g.generateKeyPair();
+        } catch (java.security.GeneralSecurityException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     *  Not instantiable.
+     */
+    private Fixtures() {
+    }//Fixtures()*/
+
+    /**
+     *  Make a Master that knows both applications.
+     *
+     *  @return the Master.
+     */
+    static ServerosMaster master() {
+        return new ServerosMaster(Fixtures.MASTER.getPrivate())
+            .addApplication(Fixtures.CONSUMER_ID, Fixtures.CONSUMER.getPublic(), Json.createObjectBuilder().add("role", "benchmark").build())
+            .addApplication(Fixtures.PROVIDER_ID, Fixtures.PROVIDER.getPublic());
+    }//master()*/
+
+    /**
+     *  Make a Provider that trusts the Master.
+     *
+     *  @return the Provider.
+     */
+    static ServerosProvider provider() {
+        return new ServerosProvider(Fixtures.PROVIDER_ID, Fixtures.MASTER.getPublic(), Fixtures.PROVIDER.getPrivate(), null, null);
+    }//provider()*/
+
+    /**
+     *  A complete set of sample messages, as the handshake would produce them.
+     */
+    static final class Messages {
+
+        /**
+         *  The request to the Master.
+         */
+        final CredentialRequest credentialRequest;
+
+        /**
+         *  The Ticket for the Provider.
+         */
+        final Ticket ticket;
+
+        /**
+         *  The Master's response.
+         */
+        final CredentialResponse credentialResponse;
+
+        /**
+         *  The consumer's proof of identity.
+         */
+        final TicketId ticketId;
+
+        /**
+         *  What the consumer presents to the Provider.
+         */
+        final TicketPresentation ticketPresentation;
+
+        /**
+         *  The Provider's acknowledgement.
+         */
+        final TicketAck ticketAck;
+
+        /**
+         *  The acknowledgement, enciphered.
+         */
+        final EncipheredAck encipheredAck;
+
+        /**
+         *  Constructor.
+         *
+         *  @throws Exception if sealing the Ticket fails.
+         */
+        Messages() throws Exception {
+            ServerosProvider p = Fixtures.provider();
+            OneTimeCredentials otc = new OneTimeCredentials(Fixtures.CIPHER);
+            Date expires = new Date(System.currentTimeMillis() + 3600000);
+            this.credentialRequest = new CredentialRequest(Fixtures.CONSUMER_ID, Fixtures.PROVIDER_ID, Fixtures.HASH
+                , HashSpec.filter(), CipherSpec.filter()
+            );
+            this.ticket = new Ticket(Fixtures.CONSUMER_ID, Fixtures.PROVIDER_ID, 17L, this.credentialRequest.nonce
+                , "id", "secret", otc, Fixtures.HASH, expires, JsonValue.NULL
+            );
+            CryptoMessage sealed = p.encryptAndSign(Fixtures.PROVIDER.getPublic(), Fixtures.MASTER.getPrivate(), this.ticket
+                , Fixtures.CIPHER, Fixtures.HASH
+            );
+            this.credentialResponse = new CredentialResponse(Fixtures.CONSUMER_ID, Fixtures.PROVIDER_ID, 17L
+                , this.credentialRequest.nonce, "id", "secret", otc, Fixtures.HASH, expires, sealed
+            );
+            this.ticketId = new TicketId(Fixtures.CONSUMER_ID, 17L, this.credentialRequest.nonce
+                , OneTimeCredentials.toBase64(OneTimeCredentials.getRandom(Fixtures.CIPHER.block))
+            );
+            this.ticketPresentation = new TicketPresentation(p.encipher(this.ticketId, otc), sealed);
+            this.ticketAck = new TicketAck(17L, this.credentialRequest.nonce, this.ticketId.finalNonce);
+            this.encipheredAck = new EncipheredAck(p.encipher(this.ticketAck, otc));
+        }//Messages()*/
+    }//Messages*/
+}//Fixtures*/
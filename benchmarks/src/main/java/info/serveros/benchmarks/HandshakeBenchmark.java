@@ -0,0 +1,156 @@
+package info.serveros.benchmarks;
+
+import info.serveros.Credentials;
+import info.serveros.Encrypter.CryptoMessage;
+import info.serveros.OneTimeCredentials;
+import info.serveros.ServerosConsumer;
+import info.serveros.ServerosMaster;
+import info.serveros.ServerosProvider;
+import info.serveros.algorithms.CipherSpec;
+import info.serveros.algorithms.HashSpec;
+import info.serveros.messages.CredentialRequest;
+import info.serveros.messages.CredentialResponse;
+import info.serveros.messages.EncipheredAck;
+import info.serveros.messages.TicketAck;
+import info.serveros.messages.TicketId;
+import info.serveros.messages.TicketPresentation;
+import info.serveros.transport.MasterServer;
+import info.serveros.transport.ProviderServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The whole consumer/provider exchange: once entirely in memory, to see what the cryptography and
+ *  the messages cost together, and once over loopback HTTP through a MasterServer and a
+ *  ProviderServer, to see what the transport adds.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HandshakeBenchmark {
+
+    /**
+     *  The Authentication Master.
+     */
+    private ServerosMaster master;
+
+    /**
+     *  The Service Provider.
+     */
+    private ServerosProvider provider;
+
+    /**
+     *  The consumer.
+     */
+    private ServerosConsumer consumer;
+
+    /**
+     *  The Master, over HTTP.
+     */
+    private MasterServer masterServer;
+
+    /**
+     *  The Provider, over HTTP.
+     */
+    private ProviderServer providerServer;
+
+    /**
+     *  The consumer, talking to the servers.
+     */
+    private ServerosConsumer remote;
+
+    /**
+     *  Where the Provider listens.
+     */
+    private String endpoint;
+
+    /**
+     *  Start the servers.
+     *
+     *  @throws IOException if a server can't be started.
+     */
+    @Setup
+    public void setup() throws IOException {
+        this.master = Fixtures.master();
+        this.provider = Fixtures.provider();
+        this.consumer = new ServerosConsumer(Fixtures.CONSUMER_ID, "unused", Fixtures.MASTER.getPublic(), Fixtures.CONSUMER.getPrivate());
+        InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", 0);
+        this.masterServer = new MasterServer(this.master, loopback).start();
+        //Nothing here uses the Credentials once they're acknowledged.
+        this.providerServer = new ProviderServer(this.provider, credentials -> { }, loopback).start();
+        this.remote = new ServerosConsumer(Fixtures.CONSUMER_ID, "127.0.0.1:" + this.masterServer.getAddress().getPort()
+            , Fixtures.MASTER.getPublic(), Fixtures.CONSUMER.getPrivate()
+        );
+        this.endpoint = "http://127.0.0.1:" + this.providerServer.getAddress().getPort() + "/";
+    }//setup()*/
+
+    /**
+     *  Stop the servers.
+     */
+    @TearDown
+    public void tearDown() {
+        this.masterServer.close();
+        this.providerServer.close();
+    }//tearDown()*/
+
+    /**
+     *  Run the exchange in memory, as the consumer, Master and Provider would each see it.
+     *
+     *  @return the acknowledgement.
+     *
+     *  @throws Exception if any step fails.
+     */
+    @Benchmark
+    public TicketAck inMemory() throws Exception {
+        CredentialRequest creq = new CredentialRequest(Fixtures.CONSUMER_ID, Fixtures.PROVIDER_ID, Fixtures.HASH
+            , HashSpec.filter(), CipherSpec.filter()
+        );
+        CryptoMessage authRequest = this.consumer.encryptAndSign(Fixtures.MASTER.getPublic(), Fixtures.CONSUMER.getPrivate()
+            , creq, Fixtures.CIPHER, Fixtures.HASH
+        );
+        CredentialResponse resp = new CredentialResponse(this.consumer.decryptAndVerify(Fixtures.CONSUMER.getPrivate()
+            , Fixtures.MASTER.getPublic(), this.master.authenticate(authRequest)
+        ));
+        TicketId id = new TicketId(resp.requester, resp.serverNonce, resp.requesterNonce
+            , OneTimeCredentials.toBase64(OneTimeCredentials.getRandom(resp.credentials.cipher.block))
+        );
+        EncipheredAck enciphered = this.provider.getEncipheredAck(
+            new TicketPresentation(this.consumer.encipher(id, resp.credentials), resp.ticket)
+        );
+        TicketAck ack = new TicketAck(this.consumer.decipher(enciphered.message
+            , new OneTimeCredentials(resp.credentials.getKeyString(), id.iv, resp.credentials.cipher)
+        ));
+        if (ack.finalNonce != id.finalNonce)
+            throw new IllegalStateException("Nonce mismatch.");
+        return ack;
+    }//inMemory()*/
+
+    /**
+     *  Run the exchange over loopback HTTP.
+     *
+     *  @return the Credentials.
+     *
+     *  @throws Exception if any step fails.
+     */
+    @Benchmark
+    public Credentials loopback() throws Exception {
+        return this.remote.getCredentials(Fixtures.PROVIDER_ID, this.endpoint);
+    }//loopback()*/
+}//HandshakeBenchmark*/
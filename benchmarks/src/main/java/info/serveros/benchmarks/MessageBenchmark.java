@@ -0,0 +1,107 @@
+package info.serveros.benchmarks;
+
+import info.serveros.JSONable;
+import info.serveros.algorithms.Encoding;
+import info.serveros.messages.CredentialRequest;
+import info.serveros.messages.CredentialResponse;
+import info.serveros.messages.EncipheredAck;
+import info.serveros.messages.Ticket;
+import info.serveros.messages.TicketAck;
+import info.serveros.messages.TicketId;
+import info.serveros.messages.TicketPresentation;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  Serializing and parsing every message of the handshake, as JSON and as CBOR.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageBenchmark {
+
+    /**
+     *  The message under test.
+     */
+    @Param({"CredentialRequest", "Ticket", "CredentialResponse", "TicketId", "TicketPresentation", "TicketAck", "EncipheredAck"})
+    public String message;
+
+    /**
+     *  The Encoding under test.
+     */
+    @Param({"json", "cbor"})
+    public Encoding encoding;
+
+    /**
+     *  The message.
+     */
+    private JSONable value;
+
+    /**
+     *  The message, encoded.
+     */
+    private byte[] bytes;
+
+    /**
+     *  Builds the message from Json.
+     */
+    private Function<JsonObject, JSONable> parser;
+
+    /**
+     *  Prepare the inputs.
+     *
+     *  @throws Exception if the sample messages can't be made.
+     */
+    @Setup
+    public void setup() throws Exception {
+        Fixtures.Messages m = new Fixtures.Messages();
+        switch (this.message) {
+            case "CredentialRequest": this.value = m.credentialRequest; this.parser = CredentialRequest::new; break;
+            case "Ticket": this.value = m.ticket; this.parser = Ticket::new; break;
+            case "CredentialResponse": this.value = m.credentialResponse; this.parser = CredentialResponse::new; break;
+            case "TicketId": this.value = m.ticketId; this.parser = TicketId::new; break;
+            case "TicketPresentation": this.value = m.ticketPresentation; this.parser = TicketPresentation::new; break;
+            case "TicketAck": this.value = m.ticketAck; this.parser = TicketAck::new; break;
+            case "EncipheredAck": this.value = m.encipheredAck; this.parser = EncipheredAck::new; break;
+            default: throw new IllegalArgumentException("Unknown message " + this.message);
+        }
+        this.bytes = this.value.toBytes(this.encoding);
+    }//setup()*/
+
+    /**
+     *  Serialize the message.
+     *
+     *  @return the encoded message.
+     */
+    @Benchmark
+    public byte[] serialize() {
+        return this.value.toBytes(this.encoding);
+    }//serialize()*/
+
+    /**
+     *  Parse the message.
+     *
+     *  @return the message.
+     */
+    @Benchmark
+    public JSONable parse() {
+        return this.parser.apply(JSONable.unpack(this.bytes));
+    }//parse()*/
+}//MessageBenchmark*/
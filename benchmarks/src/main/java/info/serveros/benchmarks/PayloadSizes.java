@@ -0,0 +1,59 @@
+package info.serveros.benchmarks;
+
+import info.serveros.JSONable;
+import info.serveros.algorithms.Encoding;
+
+/**
+ *  Prints the size of every message of the handshake in each Encoding - the other half of what
+ *  MessageBenchmark measures, since a smaller encoding that's slower to write can still win on the
+ *  wire.  Run with java -cp target/benchmarks.jar info.serveros.benchmarks.PayloadSizes.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public final class PayloadSizes {
+
+    /**
+     *  Not instantiable.
+     */
+    private PayloadSizes() {
+    }//PayloadSizes()*/
+
+    /**
+     *  Print the table.
+     *
+     *  @param args ignored.
+     *
+     *  @throws Exception if the sample messages can't be made.
+     */
+    public static void main(String[] args) throws Exception {
+        Fixtures.Messages m = new Fixtures.Messages();
+        StringBuilder header = new StringBuilder(String.format("%-20s", "message"));
+        for (Encoding e: Encoding.values())
+            header.append(String.format("%10s", e));
+        System.out.println(header.append(String.format("%10s", "vs json")));
+        PayloadSizes.row("CredentialRequest", m.credentialRequest);
+        PayloadSizes.row("Ticket", m.ticket);
+        PayloadSizes.row("CredentialResponse", m.credentialResponse);
+        PayloadSizes.row("TicketId", m.ticketId);
+        PayloadSizes.row("TicketPresentation", m.ticketPresentation);
+        PayloadSizes.row("TicketAck", m.ticketAck);
+        PayloadSizes.row("EncipheredAck", m.encipheredAck);
+    }//main(String[])*/
+
+    /**
+     *  Print one message's sizes, in bytes, and the last Encoding's size as a fraction of JSON's.
+     *
+     *  @param name the message's name.
+     *  @param value the message.
+     */
+    private static void row(String name, JSONable value) {
+        StringBuilder row = new StringBuilder(String.format("%-20s", name));
+        int json = value.toBytes(Encoding.json).length;
+        int last = json;
+        for (Encoding e: Encoding.values()) {
+            last = value.toBytes(e).length;
+            row.append(String.format("%10d", last));
+        }
+        System.out.println(row.append(String.format("%9.0f%%", 100.0 * last / json)));
+    }//row(String, JSONable)*/
+}//PayloadSizes*/
@@ -0,0 +1,145 @@
+package info.serveros.benchmarks;
+
+import info.serveros.Base64Codec;
+import info.serveros.OneTimeCredentials;
+import info.serveros.messages.Encryptable;
+import info.serveros.metrics.Histogram;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.DatatypeConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  The small things every message pays for: Base64, against the JDK codec it wraps and the
+ *  DatatypeConverter it replaced, nonces, and recording a timing.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimitivesBenchmark {
+
+    /**
+     *  The number of bytes to encode.
+     */
+    @Param({"16", "256", "4096"})
+    public int size;
+
+    /**
+     *  The raw bytes.
+     */
+    private byte[] raw;
+
+    /**
+     *  The bytes, encoded.
+     */
+    private String encoded;
+
+    /**
+     *  Timings, as HistogramMetrics records them.
+     */
+    private final Histogram histogram = new Histogram();
+
+    /**
+     *  Prepare the inputs.
+     */
+    @Setup
+    public void setup() {
+        this.raw = new byte[this.size];
+        ThreadLocalRandom.current().nextBytes(this.raw);
+        this.encoded = Base64Codec.STANDARD.encode(this.raw);
+    }//setup()*/
+
+    /**
+     *  Encode with the codec.
+     *
+     *  @return the encoded bytes.
+     */
+    @Benchmark
+    public String codecEncode() {
+        return OneTimeCredentials.toBase64(this.raw);
+    }//codecEncode()*/
+
+    /**
+     *  Decode with the codec.
+     *
+     *  @return the decoded bytes.
+     */
+    @Benchmark
+    public byte[] codecDecode() {
+        return OneTimeCredentials.fromBase64(this.encoded);
+    }//codecDecode()*/
+
+    /**
+     *  Encode with the JDK.
+     *
+     *  @return the encoded bytes.
+     */
+    @Benchmark
+    public String jdkEncode() {
+        return Base64.getEncoder().encodeToString(this.raw);
+    }//jdkEncode()*/
+
+    /**
+     *  Decode with the JDK.
+     *
+     *  @return the decoded bytes.
+     */
+    @Benchmark
+    public byte[] jdkDecode() {
+        return Base64.getDecoder().decode(this.encoded);
+    }//jdkDecode()*/
+
+    /**
+     *  Encode with DatatypeConverter.
+     *
+     *  @return the encoded bytes.
+     */
+    @Benchmark
+    public String datatypeConverterEncode() {
+        return DatatypeConverter.printBase64Binary(this.raw);
+    }//datatypeConverterEncode()*/
+
+    /**
+     *  Decode with DatatypeConverter.
+     *
+     *  @return the decoded bytes.
+     */
+    @Benchmark
+    public byte[] datatypeConverterDecode() {
+        return DatatypeConverter.parseBase64Binary(this.encoded);
+    }//datatypeConverterDecode()*/
+
+    /**
+     *  Generate a nonce.
+     *
+     *  @return the nonce.
+     */
+    @Benchmark
+    public long nonce() {
+        return Encryptable.generateNonce();
+    }//nonce()*/
+
+    /**
+     *  Record a timing.
+     */
+    @Benchmark
+    public void histogram() {
+        this.histogram.record(System.nanoTime() & 0xFFFFFFFL);
+    }//histogram()*/
+}//PrimitivesBenchmark*/
@@ -0,0 +1,258 @@
+package info.serveros.benchmarks;
+
+import info.serveros.Credentials;
+import info.serveros.ReplayStore;
+import info.serveros.ServerosProvider;
+import info.serveros.TicketCache;
+import info.serveros.messages.TicketPresentation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  What a Service Provider does with presentations: with and without a TicketCache, one at a time
+ *  and in batches, and the ReplayStore in front of the acknowledgement.  Presentations are
+ *  refreshed every iteration, so none goes stale mid-trial.  Each group of benchmarks keeps its
+ *  own state, so the batch size only multiplies the batch benchmarks.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProviderBenchmark {
+
+    /**
+     *  Keys recorded in each ReplayStore iteration or invocation.
+     */
+    private static final int KEYS = 1 << 16;
+
+    /**
+     *  A Provider without a TicketCache.
+     */
+    private ServerosProvider uncached;
+
+    /**
+     *  A Provider with a TicketCache.
+     */
+    private ServerosProvider cached;
+
+    /**
+     *  A presentation of a single Ticket.
+     */
+    private TicketPresentation presentation;
+
+    /**
+     *  Make the Providers.
+     */
+    @Setup
+    public void setup() {
+        this.uncached = Fixtures.provider();
+        this.cached = Fixtures.provider().setTicketCache(new TicketCache());
+    }//setup()*/
+
+    /**
+     *  Make a fresh presentation.
+     *
+     *  @throws Exception if a Ticket can't be sealed.
+     */
+    @Setup(Level.Iteration)
+    public void presentation() throws Exception {
+        this.presentation = new Fixtures.Messages().ticketPresentation;
+        this.cached.getTicketCache().clear();
+    }//presentation()*/
+
+    /**
+     *  Open a presentation, verifying its Ticket every time.
+     *
+     *  @return the Credentials.
+     *
+     *  @throws Exception if the presentation is refused.
+     */
+    @Benchmark
+    public Credentials ticketCacheMiss() throws Exception {
+        return this.uncached.getCredentials(this.presentation);
+    }//ticketCacheMiss()*/
+
+    /**
+     *  Open a presentation whose Ticket has been verified before.
+     *
+     *  @return the Credentials.
+     *
+     *  @throws Exception if the presentation is refused.
+     */
+    @Benchmark
+    public Credentials ticketCacheHit() throws Exception {
+        return this.cached.getCredentials(this.presentation);
+    }//ticketCacheHit()*/
+
+    /**
+     *  Open every presentation in the batch, one after another.
+     *
+     *  @param b the batch.
+     *
+     *  @return the Credentials.
+     *
+     *  @throws Exception if a presentation is refused.
+     */
+    @Benchmark
+    public List<Credentials> serial(Batch b) throws Exception {
+        List<Credentials> l = new ArrayList<Credentials>(b.presentations.size());
+        for (TicketPresentation p: b.presentations)
+            l.add(b.provider.getCredentials(p));
+        return l;
+    }//serial(Batch)*/
+
+    /**
+     *  Open every presentation as a batch.
+     *
+     *  @param b the batch.
+     *
+     *  @return the results.
+     */
+    @Benchmark
+    public List<ServerosProvider.BatchResult> batch(Batch b) {
+        return b.provider.getCredentials(b.presentations);
+    }//batch(Batch)*/
+
+    /**
+     *  Record a presentation that hasn't been seen.  The store can only take KEYS of these before it
+     *  fills, so each iteration is a single shot of exactly KEYS calls into a store emptied before it.
+     *
+     *  @param r the stores.
+     *
+     *  @return true if accepted.
+     *
+     *  @throws Exception if the store fills.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = ProviderBenchmark.KEYS)
+    @Measurement(iterations = 5, batchSize = ProviderBenchmark.KEYS)
+    public boolean replayFresh(Replay r) throws Exception {
+        long key = r.next++;
+        return r.fresh.record(key, key);
+    }//replayFresh(Replay)*/
+
+    /**
+     *  Record presentations that have been seen.
+     *
+     *  @param r the stores.
+     *
+     *  @return the number accepted.
+     *
+     *  @throws Exception if the store fills.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ProviderBenchmark.KEYS)
+    public int replaySeen(Replay r) throws Exception {
+        int accepted = 0;
+        for (int i = 0; i < ProviderBenchmark.KEYS; i++)
+            if (r.seen.record(i, i)) accepted++;
+        return accepted;
+    }//replaySeen(Replay)*/
+
+    /**
+     *  A batch of presentations of distinct Tickets, for the batch benchmarks alone.
+     */
+    @State(Scope.Benchmark)
+    public static class Batch {
+
+        /**
+         *  The number of presentations in a batch.
+         */
+        @Param({"16", "64"})
+        public int batchSize;
+
+        /**
+         *  A Provider without a TicketCache.
+         */
+        private ServerosProvider provider;
+
+        /**
+         *  Presentations of distinct Tickets.
+         */
+        private List<TicketPresentation> presentations;
+
+        /**
+         *  Make the Provider.
+         */
+        @Setup
+        public void setup() {
+            this.provider = Fixtures.provider();
+        }//setup()*/
+
+        /**
+         *  Make fresh presentations.
+         *
+         *  @throws Exception if a Ticket can't be sealed.
+         */
+        @Setup(Level.Iteration)
+        public void presentations() throws Exception {
+            List<TicketPresentation> l = new ArrayList<TicketPresentation>(this.batchSize);
+            for (int i = 0; i < this.batchSize; i++)
+                l.add(new Fixtures.Messages().ticketPresentation);
+            this.presentations = l;
+        }//presentations()*/
+    }//Batch*/
+
+    /**
+     *  The ReplayStores, for the replay benchmarks alone.
+     */
+    @State(Scope.Benchmark)
+    public static class Replay {
+
+        /**
+         *  A store emptied before every iteration, for recording fresh presentations.
+         */
+        private ReplayStore fresh;
+
+        /**
+         *  The next key to record in the fresh store.
+         */
+        private long next;
+
+        /**
+         *  A store that has seen every key.
+         */
+        private ReplayStore seen;
+
+        /**
+         *  Make a store that has seen every key.
+         *
+         *  @throws Exception if the store fills.
+         */
+        @Setup
+        public void setup() throws Exception {
+            this.seen = new ReplayStore(ProviderBenchmark.KEYS);
+            for (int i = 0; i < ProviderBenchmark.KEYS; i++)
+                this.seen.record(i, i);
+        }//setup()*/
+
+        /**
+         *  Empty the fresh store.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.fresh = new ReplayStore(ProviderBenchmark.KEYS);
+            this.next = 0;
+        }//reset()*/
+    }//Replay*/
+}//ProviderBenchmark*/
@@ -0,0 +1,109 @@
+package info.serveros.benchmarks;
+
+import info.serveros.OneTimeCredentials;
+import info.serveros.ThreadLocalSecureRandom;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  Making one-time credentials from many threads at once: with one SecureRandom shared between them,
+ *  and with a ThreadLocalSecureRandom.  The shared generator is synchronized, so its throughput
+ *  should flatten as threads are added, where the per-thread one keeps scaling with the cores.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RandomBenchmark {
+
+    /**
+     *  One SecureRandom, shared by every thread.
+     */
+    private final Random shared = new SecureRandom();
+
+    /**
+     *  A SecureRandom for each thread.
+     */
+    private final Random perThread = new ThreadLocalSecureRandom();
+
+    /**
+     *  Make credentials from the shared SecureRandom, on one thread.
+     *
+     *  @return the credentials.
+     */
+    @Benchmark
+    @Threads(1)
+    public OneTimeCredentials shared1() {
+        return new OneTimeCredentials(Fixtures.CIPHER, this.shared);
+    }//shared1()*/
+
+    /**
+     *  Make credentials from the shared SecureRandom, on four threads.
+     *
+     *  @return the credentials.
+     */
+    @Benchmark
+    @Threads(4)
+    public OneTimeCredentials shared4() {
+        return new OneTimeCredentials(Fixtures.CIPHER, this.shared);
+    }//shared4()*/
+
+    /**
+     *  Make credentials from the shared SecureRandom, on sixteen threads.
+     *
+     *  @return the credentials.
+     */
+    @Benchmark
+    @Threads(16)
+    public OneTimeCredentials shared16() {
+        return new OneTimeCredentials(Fixtures.CIPHER, this.shared);
+    }//shared16()*/
+
+    /**
+     *  Make credentials from a ThreadLocalSecureRandom, on one thread.
+     *
+     *  @return the credentials.
+     */
+    @Benchmark
+    @Threads(1)
+    public OneTimeCredentials perThread1() {
+        return new OneTimeCredentials(Fixtures.CIPHER, this.perThread);
+    }//perThread1()*/
+
+    /**
+     *  Make credentials from a ThreadLocalSecureRandom, on four threads.
+     *
+     *  @return the credentials.
+     */
+    @Benchmark
+    @Threads(4)
+    public OneTimeCredentials perThread4() {
+        return new OneTimeCredentials(Fixtures.CIPHER, this.perThread);
+    }//perThread4()*/
+
+    /**
+     *  Make credentials from a ThreadLocalSecureRandom, on sixteen threads.
+     *
+     *  @return the credentials.
+     */
+    @Benchmark
+    @Threads(16)
+    public OneTimeCredentials perThread16() {
+        return new OneTimeCredentials(Fixtures.CIPHER, this.perThread);
+    }//perThread16()*/
+}//RandomBenchmark*/
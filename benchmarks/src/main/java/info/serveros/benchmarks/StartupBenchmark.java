@@ -0,0 +1,98 @@
+package info.serveros.benchmarks;
+
+import info.serveros.algorithms.CipherSpec;
+import info.serveros.algorithms.HashSpec;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  Start up cost of finding the supported algorithms, as a process that builds a handful of
+ *  Encrypters pays it.  Every measurement is the first and only call in a fresh JVM, so each fork
+ *  sees cold providers and cold classes: the Capabilities registry probes once and answers from an
+ *  EnumSet after that, where the old filters probed every algorithm for every Encrypter.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    /**
+     *  The number of Encrypters the process builds.
+     */
+    private static final int ENCRYPTERS = 10;
+
+    /**
+     *  Filter the algorithms through the Capabilities registry, once per Encrypter.
+     *
+     *  @return the number of supported algorithms found by the last filter.
+     */
+    @Benchmark
+    public int registry() {
+        int supported = 0;
+        for (int i = 0; i < StartupBenchmark.ENCRYPTERS; i++)
+            supported = CipherSpec.filter().length + HashSpec.filter().length;
+        return supported;
+    }//registry()*/
+
+    /**
+     *  Probe every algorithm directly, once per Encrypter - what the filters did before the registry.
+     *
+     *  @return the number of supported algorithms found by the last probe.
+     */
+    @Benchmark
+    public int probeEveryTime() {
+        int supported = 0;
+        for (int i = 0; i < StartupBenchmark.ENCRYPTERS; i++) {
+            supported = 0;
+            for (CipherSpec c: CipherSpec.values())
+                if (StartupBenchmark.probe(c)) supported++;
+            for (HashSpec h: HashSpec.values())
+                if (StartupBenchmark.probe(h)) supported++;
+        }
+        return supported;
+    }//probeEveryTime()*/
+
+    /**
+     *  Probe a CipherSpec the way the old filter did.
+     *
+     *  @param a the CipherSpec to probe.
+     *
+     *  @return true if the Cipher can be built, and has the expected block and key sizes.
+     */
+    private static boolean probe(CipherSpec a) {
+        try {
+            Cipher c = Cipher.getInstance(a.cipherSpec);
+            return c.getBlockSize() * 8 == a.block && Cipher.getMaxAllowedKeyLength(a.cipherSpec) >= a.key;
+        } catch (java.security.GeneralSecurityException e) {
+            return false;
+        }
+    }//probe(CipherSpec)*/
+
+    /**
+     *  Probe a HashSpec the way the old filter did.
+     *
+     *  @param h the HashSpec to probe.
+     *
+     *  @return true if the Signature can be built.
+     */
+    private static boolean probe(HashSpec h) {
+        try {
+            Signature.getInstance(h.hashName);
+            return true;
+        } catch (java.security.GeneralSecurityException e) {
+            return false;
+        }
+    }//probe(HashSpec)*/
+}//StartupBenchmark*/
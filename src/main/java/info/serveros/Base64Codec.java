@@ -0,0 +1,271 @@
+package info.serveros;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ *  Base64, in the standard and URL-safe alphabets.  Strings go through the JDK's codec, which the
+ *  JIT handles well; the array methods encode and decode into buffers the caller supplies, so a
+ *  message can be assembled without any intermediate copies.  Immutable, so the two instances
+ *  can be shared freely between threads.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public final class Base64Codec {
+
+    /**
+     *  The standard alphabet, with padding - what the rest of the protocol speaks.
+     */
+    public static final Base64Codec STANDARD = new Base64Codec(
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+        , true
+        , Base64.getEncoder()
+        , Base64.getDecoder()
+    );
+
+    /**
+     *  The URL-safe alphabet, without padding - nothing in it needs escaping in a query string.
+     */
+    public static final Base64Codec URL_SAFE = new Base64Codec(
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+        , false
+        , Base64.getUrlEncoder().withoutPadding()
+        , Base64.getUrlDecoder()
+    );
+
+    /**
+     *  The padding character.
+     */
+    private static final byte PAD = '=';
+
+    /**
+     *  The alphabet, indexed by six bit value.
+     */
+    private final byte[] alphabet;
+
+    /**
+     *  The six bit value of each character, indexed by character.  -1 for characters outside the alphabet.
+     */
+    private final byte[] values = new byte[128];
+
+    /**
+     *  True if encoded output is padded to a multiple of four characters.
+     */
+    private final boolean padded;
+
+    /**
+     *  The JDK encoder for this alphabet.
+     */
+    private final Base64.Encoder encoder;
+
+    /**
+     *  The JDK decoder for this alphabet.
+     */
+    private final Base64.Decoder decoder;
+
+    /**
+     *  Constructor.
+     *
+     *  @param alphabet the 64 characters, in order.
+     *  @param padded true if encoded output should be padded.
+     *  @param encoder the JDK encoder for the same alphabet.
+     *  @param decoder the JDK decoder for the same alphabet.
+     */
+    private Base64Codec(String alphabet, boolean padded, Base64.Encoder encoder, Base64.Decoder decoder) {
+        this.alphabet = alphabet.getBytes(StandardCharsets.US_ASCII);
+        this.padded = padded;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        Arrays.fill(this.values, (byte) -1);
+        for (int i = 0; i < this.alphabet.length; i++)
+            this.values[this.alphabet[i]] = (byte) i;
+    }//Base64Codec(String, boolean, Base64.Encoder, Base64.Decoder)*/
+
+    /**
+     *  Encode some bytes.
+     *
+     *  @param bytes the bytes.
+     *
+     *  @return the base64 encoded string.
+     */
+    public String encode(byte[] bytes) {
+        return this.encoder.encodeToString(bytes);
+    }//encode(byte[])*/
+
+    /**
+     *  Decode a string.  Strictly valid input takes the fast path; anything else - line breaks in
+     *  a key file, say - is decoded leniently, skipping characters outside the alphabet.
+     *
+     *  @param base64 the base64 encoded string.
+     *
+     *  @return the bytes represented by the input.
+     */
+    public byte[] decode(String base64) {
+        try {
+            return this.decoder.decode(base64);
+        } catch (IllegalArgumentException e) {
+            byte[] src = base64.getBytes(StandardCharsets.ISO_8859_1);
+            byte[] dst = new byte[src.length * 3 / 4];
+            return Arrays.copyOf(dst, this.decode(src, 0, src.length, dst, 0, true));
+        }
+    }//decode(String)*/
+
+    /**
+     *  Whether a string is exactly what encode would produce for some bytes - in this alphabet,
+     *  padded as this codec pads, with no stray bits in the last character - so that decoding it
+     *  and encoding again gives back the very same string.
+     *
+     *  @param s the string.
+     *
+     *  @return true if the string is canonical base64.
+     */
+    public boolean isCanonical(String s) {
+        int end = s.length();
+        if (this.padded) {
+            if (end % 4 != 0)
+                return false;
+            for (int i = 0; i < 2 && end > 0 && s.charAt(end - 1) == Base64Codec.PAD; i++)
+                end--;
+        }
+        int remainder = end % 4;
+        if (remainder == 1 || (this.padded && remainder != 0 && end + 4 - remainder != s.length()))
+            return false;
+        int last = 0;
+        for (int i = 0; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 128 || this.values[c] < 0)
+                return false;
+            last = this.values[c];
+        }
+        //  The last character of a partial group carries bits past the end of the bytes.
+        return remainder == 0 || (last & (remainder == 2 ? 0x0f : 0x03)) == 0;
+    }//isCanonical(String)*/
+
+    /**
+     *  The number of characters needed to encode some bytes.
+     *
+     *  @param length the number of bytes.
+     *
+     *  @return the length of the encoded form.
+     */
+    public int encodedLength(int length) {
+        if (this.padded)
+            return (length + 2) / 3 * 4;
+        return length / 3 * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+    }//encodedLength(int)*/
+
+    /**
+     *  The most bytes some encoded characters could decode to.
+     *
+     *  @param length the number of encoded characters.
+     *
+     *  @return an upper bound on the decoded length.
+     */
+    public static int maxDecodedLength(int length) {
+        return length / 4 * 3 + (length % 4 == 0 ? 0 : length % 4 - 1);
+    }//maxDecodedLength(int)*/
+
+    /**
+     *  Encode bytes into a buffer.
+     *
+     *  @param src the bytes to encode.
+     *  @param off where in src to start.
+     *  @param len how many bytes to encode.
+     *  @param dst where to write the encoded characters, as ASCII bytes.
+     *  @param dstOff where in dst to start.
+     *
+     *  @return the number of characters written - always encodedLength(len).
+     *
+     *  @throws ArrayIndexOutOfBoundsException if dst is too small.
+     */
+    public int encode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        byte[] a = this.alphabet;
+        int end = off + len - len % 3;
+        int d = dstOff;
+        int s = off;
+        while (s < end) {
+            int bits = (src[s++] & 0xff) << 16 | (src[s++] & 0xff) << 8 | (src[s++] & 0xff);
+            dst[d++] = a[bits >>> 18];
+            dst[d++] = a[(bits >>> 12) & 0x3f];
+            dst[d++] = a[(bits >>> 6) & 0x3f];
+            dst[d++] = a[bits & 0x3f];
+        }
+        int remaining = off + len - s;
+        if (remaining > 0) {
+            int bits = (src[s] & 0xff) << 10 | (remaining == 2 ? (src[s + 1] & 0xff) << 2 : 0);
+            dst[d++] = a[bits >>> 12];
+            dst[d++] = a[(bits >>> 6) & 0x3f];
+            if (remaining == 2)
+                dst[d++] = a[bits & 0x3f];
+            else if (this.padded)
+                dst[d++] = Base64Codec.PAD;
+            if (this.padded)
+                dst[d++] = Base64Codec.PAD;
+        }
+        return d - dstOff;
+    }//encode(byte[], int, int, byte[], int)*/
+
+    /**
+     *  Decode ASCII characters into a buffer.  Padding is optional.
+     *
+     *  @param src the encoded characters, as ASCII bytes.
+     *  @param off where in src to start.
+     *  @param len how many characters to decode.
+     *  @param dst where to write the decoded bytes.
+     *  @param dstOff where in dst to start.
+     *
+     *  @return the number of bytes written.
+     *
+     *  @throws IllegalArgumentException if a character outside the alphabet is found.
+     *  @throws ArrayIndexOutOfBoundsException if dst is too small.
+     */
+    public int decode(byte[] src, int off, int len, byte[] dst, int dstOff) {
+        return this.decode(src, off, len, dst, dstOff, false);
+    }//decode(byte[], int, int, byte[], int)*/
+
+    /**
+     *  Decode ASCII characters into a buffer.
+     *
+     *  @param src the encoded characters, as ASCII bytes.
+     *  @param off where in src to start.
+     *  @param len how many characters to decode.
+     *  @param dst where to write the decoded bytes.
+     *  @param dstOff where in dst to start.
+     *  @param lenient true to skip characters outside the alphabet, rather than rejecting them.
+     *
+     *  @return the number of bytes written.
+     */
+    private int decode(byte[] src, int off, int len, byte[] dst, int dstOff, boolean lenient) {
+        int end = off + len;
+        while (end > off && src[end - 1] == Base64Codec.PAD)
+            end--;
+        int bits = 0;
+        int count = 0;
+        int d = dstOff;
+        for (int s = off; s < end; s++) {
+            int c = src[s];
+            int v = c >= 0 ? this.values[c] : -1;
+            if (v < 0) {
+                if (lenient)
+                    continue;
+                throw new IllegalArgumentException("Illegal base64 character at " + s);
+            }
+            bits = bits << 6 | v;
+            if (++count == 4) {
+                dst[d++] = (byte) (bits >>> 16);
+                dst[d++] = (byte) (bits >>> 8);
+                dst[d++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        if (count == 1 && !lenient)
+            throw new IllegalArgumentException("Truncated base64 input");
+        if (count >= 2)
+            dst[d++] = (byte) (bits >>> (count * 6 - 8));
+        if (count == 3)
+            dst[d++] = (byte) (bits >>> 2);
+        return d - dstOff;
+    }//decode(byte[], int, int, byte[], int, boolean)*/
+}//Base64Codec*/
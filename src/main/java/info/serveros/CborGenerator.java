@@ -0,0 +1,607 @@
+package info.serveros;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonGenerator;
+
+/**
+ *  A JsonGenerator that writes CBOR instead of JSON text.  Every message already describes itself
+ *  to a JsonGenerator, so handing one of these to jsonHelper gets the same fields in binary.
+ *  Objects and arrays are written with indefinite lengths, since their sizes aren't known up front.
+ *  Base64 strings - ids, secrets, keys, ivs and ciphertext - are written as the bytes they encode,
+ *  tagged for conversion back to base64, which saves a quarter of their length.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+final class CborGenerator implements JsonGenerator {
+
+    /**
+     *  Major type for unsigned integers.
+     */
+    static final int UNSIGNED = 0;
+
+    /**
+     *  Major type for negative integers.
+     */
+    static final int NEGATIVE = 1;
+
+    /**
+     *  Major type for byte strings.
+     */
+    static final int BYTES = 2;
+
+    /**
+     *  Major type for text strings.
+     */
+    static final int TEXT = 3;
+
+    /**
+     *  Major type for arrays.
+     */
+    static final int ARRAY = 4;
+
+    /**
+     *  Major type for maps.
+     */
+    static final int MAP = 5;
+
+    /**
+     *  Major type for tags.
+     */
+    static final int TAG = 6;
+
+    /**
+     *  Major type for simple values and floats.
+     */
+    static final int SIMPLE = 7;
+
+    /**
+     *  Additional information marking an indefinite length.
+     */
+    static final int INDEFINITE = 31;
+
+    /**
+     *  The break code, ending an indefinite length item.
+     */
+    static final int BREAK = 0xff;
+
+    /**
+     *  Simple value false.
+     */
+    static final int FALSE = 0xf4;
+
+    /**
+     *  Simple value true.
+     */
+    static final int TRUE = 0xf5;
+
+    /**
+     *  Simple value null.
+     */
+    static final int NULL = 0xf6;
+
+    /**
+     *  Initial byte of a double precision float.
+     */
+    static final int FLOAT64 = 0xfb;
+
+    /**
+     *  Tag for a positive bignum.
+     */
+    static final int TAG_POSITIVE_BIGNUM = 2;
+
+    /**
+     *  Tag for a negative bignum.
+     */
+    static final int TAG_NEGATIVE_BIGNUM = 3;
+
+    /**
+     *  Tag for a decimal fraction.
+     */
+    static final int TAG_DECIMAL = 4;
+
+    /**
+     *  Tag for a byte string that's expected to be converted to base64.
+     */
+    static final int TAG_BASE64 = 22;
+
+    /**
+     *  The shortest string worth writing as bytes - the tag costs a byte, so shorter ones don't shrink.
+     */
+    private static final int MIN_BASE64 = 8;
+
+    /**
+     *  Where the CBOR goes.
+     */
+    private final OutputStream out;
+
+    /**
+     *  Bytes waiting to be written.
+     */
+    private final byte[] buffer = new byte[512];
+
+    /**
+     *  The number of bytes in the buffer.
+     */
+    private int count;
+
+    /**
+     *  Constructor.
+     *
+     *  @param out where the CBOR goes.
+     */
+    CborGenerator(OutputStream out) {
+        this.out = out;
+    }//CborGenerator(OutputStream)*/
+
+    /**
+     *  Start an object.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator writeStartObject() {
+        this.writeByte(CborGenerator.MAP << 5 | CborGenerator.INDEFINITE);
+        return this;
+    }//writeStartObject()*/
+
+    /**
+     *  Start an object, as a field of the enclosing object.
+     *
+     *  @param name the field name.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator writeStartObject(String name) {
+        this.writeText(name);
+        return this.writeStartObject();
+    }//writeStartObject(String)*/
+
+    /**
+     *  Start an array.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator writeStartArray() {
+        this.writeByte(CborGenerator.ARRAY << 5 | CborGenerator.INDEFINITE);
+        return this;
+    }//writeStartArray()*/
+
+    /**
+     *  Start an array, as a field of the enclosing object.
+     *
+     *  @param name the field name.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator writeStartArray(String name) {
+        this.writeText(name);
+        return this.writeStartArray();
+    }//writeStartArray(String)*/
+
+    /**
+     *  Write a field of any Json value.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, JsonValue value) {
+        this.writeText(name);
+        return this.write(value);
+    }//write(String, JsonValue)*/
+
+    /**
+     *  Write a string field.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, String value) {
+        this.writeText(name);
+        return this.write(value);
+    }//write(String, String)*/
+
+    /**
+     *  Write an integer field.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, BigInteger value) {
+        this.writeText(name);
+        return this.write(value);
+    }//write(String, BigInteger)*/
+
+    /**
+     *  Write a decimal field.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, BigDecimal value) {
+        this.writeText(name);
+        return this.write(value);
+    }//write(String, BigDecimal)*/
+
+    /**
+     *  Write an integer field.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, int value) {
+        this.writeText(name);
+        return this.write((long) value);
+    }//write(String, int)*/
+
+    /**
+     *  Write an integer field.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, long value) {
+        this.writeText(name);
+        return this.write(value);
+    }//write(String, long)*/
+
+    /**
+     *  Write a floating point field.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, double value) {
+        this.writeText(name);
+        return this.write(value);
+    }//write(String, double)*/
+
+    /**
+     *  Write a boolean field.
+     *
+     *  @param name the field name.
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String name, boolean value) {
+        this.writeText(name);
+        return this.write(value);
+    }//write(String, boolean)*/
+
+    /**
+     *  Write a null field.
+     *
+     *  @param name the field name.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator writeNull(String name) {
+        this.writeText(name);
+        return this.writeNull();
+    }//writeNull(String)*/
+
+    /**
+     *  End the current object or array.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator writeEnd() {
+        this.writeByte(CborGenerator.BREAK);
+        return this;
+    }//writeEnd()*/
+
+    /**
+     *  Write any Json value, recursing into objects and arrays.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(JsonValue value) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                this.writeStartObject();
+                for (Map.Entry<String, JsonValue> e: ((JsonObject) value).entrySet())
+                    this.write(e.getKey(), e.getValue());
+                return this.writeEnd();
+            case ARRAY:
+                this.writeStartArray();
+                for (JsonValue v: (JsonArray) value)
+                    this.write(v);
+                return this.writeEnd();
+            case STRING:
+                return this.write(((JsonString) value).getString());
+            case NUMBER:
+                JsonNumber n = (JsonNumber) value;
+                return n.isIntegral() ? this.write(n.bigIntegerValue()) : this.write(n.bigDecimalValue());
+            case TRUE:
+                return this.write(true);
+            case FALSE:
+                return this.write(false);
+            default:
+                return this.writeNull();
+        }
+    }//write(JsonValue)*/
+
+    /**
+     *  Write a string - as the bytes it encodes, if it's canonical base64, so it reads back as the
+     *  very same string.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(String value) {
+        if (value.length() >= CborGenerator.MIN_BASE64 && Base64Codec.STANDARD.isCanonical(value)) {
+            byte[] bytes = Base64Codec.STANDARD.decode(value);
+            this.writeHead(CborGenerator.TAG, CborGenerator.TAG_BASE64);
+            this.writeHead(CborGenerator.BYTES, bytes.length);
+            this.writeBytes(bytes, 0, bytes.length);
+        } else {
+            this.writeText(value);
+        }
+        return this;
+    }//write(String)*/
+
+    /**
+     *  Write a decimal, as a decimal fraction - exact, unlike a float.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(BigDecimal value) {
+        if (value.scale() == 0)
+            return this.write(value.unscaledValue());
+        this.writeHead(CborGenerator.TAG, CborGenerator.TAG_DECIMAL);
+        this.writeHead(CborGenerator.ARRAY, 2);
+        this.write((long) -value.scale());
+        return this.write(value.unscaledValue());
+    }//write(BigDecimal)*/
+
+    /**
+     *  Write an integer, as a bignum if it won't fit in a long.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(BigInteger value) {
+        if (value.bitLength() < 64)
+            return this.write(value.longValue());
+        boolean negative = value.signum() < 0;
+        byte[] magnitude = (negative ? value.negate().subtract(BigInteger.ONE) : value).toByteArray();
+        int off = magnitude[0] == 0 ? 1 : 0;
+        this.writeHead(CborGenerator.TAG, negative ? CborGenerator.TAG_NEGATIVE_BIGNUM : CborGenerator.TAG_POSITIVE_BIGNUM);
+        this.writeHead(CborGenerator.BYTES, magnitude.length - off);
+        this.writeBytes(magnitude, off, magnitude.length - off);
+        return this;
+    }//write(BigInteger)*/
+
+    /**
+     *  Write an integer.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(int value) {
+        return this.write((long) value);
+    }//write(int)*/
+
+    /**
+     *  Write an integer, in as few bytes as it needs.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(long value) {
+        if (value >= 0)
+            this.writeHead(CborGenerator.UNSIGNED, value);
+        else
+            this.writeHead(CborGenerator.NEGATIVE, -1 - value);
+        return this;
+    }//write(long)*/
+
+    /**
+     *  Write a double.  Like JSON, there's no room for NaN or the infinities.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     *
+     *  @throws NumberFormatException if the value is NaN or infinite.
+     */
+    @Override
+    public JsonGenerator write(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw new NumberFormatException("Json numbers may not be NaN or infinite.");
+        this.writeByte(CborGenerator.FLOAT64);
+        this.writeLong(Double.doubleToLongBits(value));
+        return this;
+    }//write(double)*/
+
+    /**
+     *  Write a boolean.
+     *
+     *  @param value the value.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator write(boolean value) {
+        this.writeByte(value ? CborGenerator.TRUE : CborGenerator.FALSE);
+        return this;
+    }//write(boolean)*/
+
+    /**
+     *  Write a null.
+     *
+     *  @return this generator.
+     */
+    @Override
+    public JsonGenerator writeNull() {
+        this.writeByte(CborGenerator.NULL);
+        return this;
+    }//writeNull()*/
+
+    /**
+     *  Flush, and close the underlying stream.
+     */
+    @Override
+    public void close() {
+        this.flush();
+        try {
+            this.out.close();
+        } catch (java.io.IOException e) {
+            throw new JsonException("Could not close the CBOR output.", e);
+        }
+    }//close()*/
+
+    /**
+     *  Write out anything buffered.
+     */
+    @Override
+    public void flush() {
+        try {
+            this.out.write(this.buffer, 0, this.count);
+            this.count = 0;
+            this.out.flush();
+        } catch (java.io.IOException e) {
+            throw new JsonException("Could not write the CBOR output.", e);
+        }
+    }//flush()*/
+
+    /**
+     *  Write a text string.  ASCII - which is nearly everything in a Serveros message - is copied
+     *  straight across, without a trip through an encoder.
+     *
+     *  @param s the string.
+     */
+    private void writeText(String s) {
+        int length = s.length();
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++)
+            ascii = s.charAt(i) < 0x80;
+        if (!ascii) {
+            byte[] utf8 = s.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            this.writeHead(CborGenerator.TEXT, utf8.length);
+            this.writeBytes(utf8, 0, utf8.length);
+            return;
+        }
+        this.writeHead(CborGenerator.TEXT, length);
+        for (int i = 0; i < length; i++)
+            this.writeByte(s.charAt(i));
+    }//writeText(String)*/
+
+    /**
+     *  Write the head of an item - its major type, and a length or value in as few bytes as possible.
+     *
+     *  @param major the major type.
+     *  @param value the length or value - treated as unsigned.
+     */
+    private void writeHead(int major, long value) {
+        int type = major << 5;
+        if (value >= 0 && value < 24) {
+            this.writeByte(type | (int) value);
+        } else if (value >= 0 && value <= 0xffL) {
+            this.writeByte(type | 24);
+            this.writeByte((int) value);
+        } else if (value >= 0 && value <= 0xffffL) {
+            this.writeByte(type | 25);
+            this.writeByte((int) (value >>> 8));
+            this.writeByte((int) value);
+        } else if (value >= 0 && value <= 0xffffffffL) {
+            this.writeByte(type | 26);
+            this.writeByte((int) (value >>> 24));
+            this.writeByte((int) (value >>> 16));
+            this.writeByte((int) (value >>> 8));
+            this.writeByte((int) value);
+        } else {
+            this.writeByte(type | 27);
+            this.writeLong(value);
+        }
+    }//writeHead(int, long)*/
+
+    /**
+     *  Write eight bytes, big endian.
+     *
+     *  @param value the bytes.
+     */
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8)
+            this.writeByte((int) (value >>> shift));
+    }//writeLong(long)*/
+
+    /**
+     *  Write some bytes.
+     *
+     *  @param b the bytes.
+     *  @param off where to start.
+     *  @param len how many.
+     */
+    private void writeBytes(byte[] b, int off, int len) {
+        for (int i = 0; i < len; i++)
+            this.writeByte(b[off + i]);
+    }//writeBytes(byte[], int, int)*/
+
+    /**
+     *  Write a byte.
+     *
+     *  @param b the byte, in the low eight bits.
+     */
+    private void writeByte(int b) {
+        if (this.count == this.buffer.length) {
+            try {
+                this.out.write(this.buffer, 0, this.count);
+            } catch (java.io.IOException e) {
+                throw new JsonException("Could not write the CBOR output.", e);
+            }
+            this.count = 0;
+        }
+        this.buffer[this.count++] = (byte) b;
+    }//writeByte(int)*/
+}//CborGenerator*/
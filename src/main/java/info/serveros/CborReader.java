@@ -0,0 +1,348 @@
+package info.serveros;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+/**
+ *  Reads the CBOR written by CborGenerator back into a JsonObject, so messages can unpack it with
+ *  the same constructors they use for JSON.  Only what a JsonGenerator can write is accepted - text
+ *  keys, text strings, byte strings tagged for base64 - which come back as base64 strings - integers,
+ *  bignums, decimal fractions, floats, booleans and null.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+final class CborReader {
+
+    /**
+     *  The deepest nesting accepted, so hostile input can't exhaust the stack.
+     */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     *  Marks the end of an indefinite length item.
+     */
+    private static final Object BREAK = new Object();
+
+    /**
+     *  Marks a null value.
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     *  The CBOR being read.
+     */
+    private final byte[] bytes;
+
+    /**
+     *  The next byte to read.
+     */
+    private int pos;
+
+    /**
+     *  One past the last byte to read.
+     */
+    private final int end;
+
+    /**
+     *  Where objects and arrays are built.
+     */
+    private final JsonBuilderFactory builders;
+
+    /**
+     *  Constructor.
+     *
+     *  @param bytes the CBOR.
+     *  @param off where it starts.
+     *  @param len how long it is.
+     */
+    private CborReader(byte[] bytes, int off, int len) {
+        this.bytes = bytes;
+        this.pos = off;
+        this.end = off + len;
+        this.builders = JSONable.getBuilderFactory();
+    }//CborReader(byte[], int, int)*/
+
+    /**
+     *  Read a CBOR encoded object.
+     *
+     *  @param bytes the CBOR.
+     *  @param off where it starts.
+     *  @param len how long it is.
+     *
+     *  @return the decoded object.
+     *
+     *  @throws JsonException if the input isn't a single, well formed object.
+     */
+    static JsonObject readObject(byte[] bytes, int off, int len) {
+        CborReader r = new CborReader(bytes, off, len);
+        Object o = r.readValue(0);
+        if (!(o instanceof JsonObjectBuilder))
+            throw new JsonException("CBOR input is not an object.");
+        if (r.pos != r.end)
+            throw new JsonException("Trailing bytes after CBOR object.");
+        return ((JsonObjectBuilder) o).build();
+    }//readObject(byte[], int, int)*/
+
+    /**
+     *  Read one item.
+     *
+     *  @param depth how deeply nested the item is.
+     *
+     *  @return a Long, BigInteger, BigDecimal, Double, String, Boolean, JsonObjectBuilder or
+     *      JsonArrayBuilder - or NULL, or BREAK.
+     */
+    private Object readValue(int depth) {
+        if (depth > CborReader.MAX_DEPTH)
+            throw new JsonException("CBOR input is nested too deeply.");
+        int initial = this.readByte();
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+            case CborGenerator.UNSIGNED: {
+                long v = this.readArgument(info);
+                return v >= 0 ? (Object) v : new BigInteger(Long.toUnsignedString(v));
+            }
+            case CborGenerator.NEGATIVE: {
+                long v = this.readArgument(info);
+                return v >= 0 ? (Object) (-1 - v) : new BigInteger(Long.toUnsignedString(v)).not();
+            }
+            case CborGenerator.TEXT:
+                return this.readText(info);
+            case CborGenerator.ARRAY:
+                return this.readArray(info, depth);
+            case CborGenerator.MAP:
+                return this.readMap(info, depth);
+            case CborGenerator.TAG:
+                return this.readTagged(this.readArgument(info), depth);
+            case CborGenerator.SIMPLE:
+                return this.readSimple(initial);
+            default:
+                throw new JsonException("Unsupported CBOR major type " + major);
+        }
+    }//readValue(int)*/
+
+    /**
+     *  Read a text string.
+     *
+     *  @param info the additional information from the initial byte.
+     *
+     *  @return the string.
+     */
+    private String readText(int info) {
+        int length = this.readLength(info);
+        String s = new String(this.bytes, this.pos, length, StandardCharsets.UTF_8);
+        this.pos += length;
+        return s;
+    }//readText(int)*/
+
+    /**
+     *  Read an array.
+     *
+     *  @param info the additional information from the initial byte.
+     *  @param depth how deeply nested the array is.
+     *
+     *  @return the array.
+     */
+    private JsonArrayBuilder readArray(int info, int depth) {
+        JsonArrayBuilder b = this.builders.createArrayBuilder();
+        if (info == CborGenerator.INDEFINITE) {
+            for (Object v = this.readValue(depth + 1); v != CborReader.BREAK; v = this.readValue(depth + 1))
+                CborReader.add(b, v);
+        } else {
+            for (long n = this.readArgument(info); n > 0; n--)
+                CborReader.add(b, this.readValue(depth + 1));
+        }
+        return b;
+    }//readArray(int, int)*/
+
+    /**
+     *  Read a map.
+     *
+     *  @param info the additional information from the initial byte.
+     *  @param depth how deeply nested the map is.
+     *
+     *  @return the map, as a Json object.
+     */
+    private JsonObjectBuilder readMap(int info, int depth) {
+        JsonObjectBuilder b = this.builders.createObjectBuilder();
+        long n = info == CborGenerator.INDEFINITE ? -1 : this.readArgument(info);
+        while (n != 0) {
+            Object key = this.readValue(depth + 1);
+            if (key == CborReader.BREAK && n < 0)
+                break;
+            if (!(key instanceof String))
+                throw new JsonException("CBOR map keys must be text.");
+            CborReader.add(b, (String) key, this.readValue(depth + 1));
+            if (n > 0)
+                n--;
+        }
+        return b;
+    }//readMap(int, int)*/
+
+    /**
+     *  Read a tagged item.
+     *
+     *  @param tag the tag.
+     *  @param depth how deeply nested the item is.
+     *
+     *  @return the number or base64 string the tag describes.
+     */
+    private Object readTagged(long tag, int depth) {
+        if (tag == CborGenerator.TAG_POSITIVE_BIGNUM || tag == CborGenerator.TAG_NEGATIVE_BIGNUM) {
+            int initial = this.readByte();
+            if (initial >>> 5 != CborGenerator.BYTES)
+                throw new JsonException("CBOR bignum must be a byte string.");
+            int length = this.readLength(initial & 0x1f);
+            byte[] magnitude = java.util.Arrays.copyOfRange(this.bytes, this.pos, this.pos + length);
+            this.pos += length;
+            BigInteger v = new BigInteger(1, magnitude);
+            return tag == CborGenerator.TAG_POSITIVE_BIGNUM ? v : v.not();
+        }
+        if (tag == CborGenerator.TAG_DECIMAL) {
+            if (this.readByte() != (CborGenerator.ARRAY << 5 | 2))
+                throw new JsonException("CBOR decimal fraction must be a two element array.");
+            Object exponent = this.readValue(depth + 1);
+            Object mantissa = this.readValue(depth + 1);
+            //  The scale is the negated exponent, so both must fit an int.
+            if (!(exponent instanceof Long)
+                    || (Long) exponent < -Integer.MAX_VALUE || (Long) exponent > Integer.MAX_VALUE)
+                throw new JsonException("CBOR decimal fraction has a bad exponent.");
+            BigInteger m = mantissa instanceof Long ? BigInteger.valueOf((Long) mantissa)
+                : mantissa instanceof BigInteger ? (BigInteger) mantissa : null;
+            if (m == null)
+                throw new JsonException("CBOR decimal fraction has a bad mantissa.");
+            return new BigDecimal(m, (int) -(Long) exponent);
+        }
+        if (tag == CborGenerator.TAG_BASE64) {
+            int initial = this.readByte();
+            if (initial >>> 5 != CborGenerator.BYTES)
+                throw new JsonException("CBOR base64 tag must hold a byte string.");
+            int length = this.readLength(initial & 0x1f);
+            byte[] bytes = java.util.Arrays.copyOfRange(this.bytes, this.pos, this.pos + length);
+            this.pos += length;
+            return Base64Codec.STANDARD.encode(bytes);
+        }
+        throw new JsonException("Unsupported CBOR tag " + tag);
+    }//readTagged(long, int)*/
+
+    /**
+     *  Read a simple value or float.
+     *
+     *  @param initial the initial byte.
+     *
+     *  @return the value.
+     */
+    private Object readSimple(int initial) {
+        switch (initial) {
+            case CborGenerator.FALSE:
+                return Boolean.FALSE;
+            case CborGenerator.TRUE:
+                return Boolean.TRUE;
+            case CborGenerator.NULL:
+                return CborReader.NULL;
+            case CborGenerator.FLOAT64:
+                return Double.longBitsToDouble(this.readArgument(27));
+            case 0xfa:
+                return (double) Float.intBitsToFloat((int) this.readArgument(26));
+            case CborGenerator.BREAK:
+                return CborReader.BREAK;
+            default:
+                throw new JsonException("Unsupported CBOR simple value " + initial);
+        }
+    }//readSimple(int)*/
+
+    /**
+     *  Read a length, and make sure that many bytes remain.
+     *
+     *  @param info the additional information from the initial byte.
+     *
+     *  @return the length.
+     */
+    private int readLength(int info) {
+        long length = this.readArgument(info);
+        if (length < 0 || length > this.end - this.pos)
+            throw new JsonException("Truncated CBOR input.");
+        return (int) length;
+    }//readLength(int)*/
+
+    /**
+     *  Read the argument that follows an initial byte.
+     *
+     *  @param info the additional information from the initial byte.
+     *
+     *  @return the argument, as an unsigned long.
+     */
+    private long readArgument(int info) {
+        if (info < 24)
+            return info;
+        int size;
+        switch (info) {
+            case 24: size = 1; break;
+            case 25: size = 2; break;
+            case 26: size = 4; break;
+            case 27: size = 8; break;
+            default: throw new JsonException("Unsupported CBOR argument " + info);
+        }
+        long v = 0;
+        for (int i = 0; i < size; i++)
+            v = v << 8 | this.readByte();
+        return v;
+    }//readArgument(int)*/
+
+    /**
+     *  Read a byte.
+     *
+     *  @return the byte, unsigned.
+     */
+    private int readByte() {
+        if (this.pos >= this.end)
+            throw new JsonException("Truncated CBOR input.");
+        return this.bytes[this.pos++] & 0xff;
+    }//readByte()*/
+
+    /**
+     *  Add a value to an array.
+     *
+     *  @param b the array.
+     *  @param v the value.
+     */
+    private static void add(JsonArrayBuilder b, Object v) {
+        if (v instanceof Long) b.add((Long) v);
+        else if (v instanceof String) b.add((String) v);
+        else if (v instanceof JsonObjectBuilder) b.add((JsonObjectBuilder) v);
+        else if (v instanceof JsonArrayBuilder) b.add((JsonArrayBuilder) v);
+        else if (v instanceof Boolean) b.add((Boolean) v);
+        else if (v instanceof BigInteger) b.add((BigInteger) v);
+        else if (v instanceof BigDecimal) b.add((BigDecimal) v);
+        else if (v instanceof Double) b.add((Double) v);
+        else if (v == CborReader.NULL) b.addNull();
+        else throw new JsonException("Unexpected CBOR break.");
+    }//add(JsonArrayBuilder, Object)*/
+
+    /**
+     *  Add a field to an object.
+     *
+     *  @param b the object.
+     *  @param name the field name.
+     *  @param v the value.
+     */
+    private static void add(JsonObjectBuilder b, String name, Object v) {
+        if (v instanceof Long) b.add(name, (Long) v);
+        else if (v instanceof String) b.add(name, (String) v);
+        else if (v instanceof JsonObjectBuilder) b.add(name, (JsonObjectBuilder) v);
+        else if (v instanceof JsonArrayBuilder) b.add(name, (JsonArrayBuilder) v);
+        else if (v instanceof Boolean) b.add(name, (Boolean) v);
+        else if (v instanceof BigInteger) b.add(name, (BigInteger) v);
+        else if (v instanceof BigDecimal) b.add(name, (BigDecimal) v);
+        else if (v instanceof Double) b.add(name, (Double) v);
+        else if (v == CborReader.NULL) b.addNull(name);
+        else throw new JsonException("Unexpected CBOR break.");
+    }//add(JsonObjectBuilder, String, Object)*/
+}//CborReader*/
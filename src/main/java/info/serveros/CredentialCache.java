@@ -0,0 +1,317 @@
+package info.serveros;
+
+import info.serveros.exceptions.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.json.JsonValue;
+
+/**
+ *  A cache of Credentials, keyed by the requested application and the provider endpoint.  Unexpired
+ *  Credentials are handed back right away.  Once only a fraction of their lifetime remains, a fresh
+ *  set is fetched in the background, so callers never wait on a handshake for a warm key.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class CredentialCache {
+
+    /**
+     *  By default, refresh once a quarter of the lifetime remains.
+     */
+    public static final double DEFAULT_REFRESH_FRACTION = 0.25;
+
+    /**
+     *  The fraction of a Credential's lifetime which, once remaining, triggers a refresh.
+     */
+    public final double refreshFraction;
+
+    /**
+     *  Where refreshes run.
+     */
+    private final Executor executor;
+
+    /**
+     *  The cached Credentials.
+     */
+    private final ConcurrentMap<CredentialKey, Entry> entries = new ConcurrentHashMap<CredentialKey, Entry>();
+
+    /**
+     *  Constructor.  Uses the default refresh fraction, and refreshes on daemon threads.
+     */
+    public CredentialCache() {
+        this(CredentialCache.DEFAULT_REFRESH_FRACTION);
+    }//CredentialCache()*/
+
+    /**
+     *  Constructor.  Refreshes on daemon threads.
+     *
+     *  @param refreshFraction the fraction of a lifetime which, once remaining, triggers a refresh.
+     */
+    public CredentialCache(double refreshFraction) {
+        this(refreshFraction, Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "serveros-credential-refresh");
+                t.setDaemon(true);
+                return t;
+            }//newThread(Runnable)*/
+        }));
+    }//CredentialCache(double)*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param refreshFraction the fraction of a lifetime which, once remaining, triggers a refresh.
+     *      0 disables refresh-ahead entirely.
+     *  @param executor where background refreshes should run.
+     */
+    public CredentialCache(double refreshFraction, Executor executor) {
+        if (refreshFraction < 0 || refreshFraction > 1)
+            throw new IllegalArgumentException("Refresh fraction must be between 0 and 1: " + refreshFraction);
+        this.refreshFraction = refreshFraction;
+        this.executor = executor;
+    }//CredentialCache(double, Executor)*/
+
+    /**
+     *  Get some Credentials - from the cache if possible, from the source if not.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials are registered.
+     *  @param source where to get fresh credentials.
+     *
+     *  @return some unexpired credentials.
+     *
+     *  @throws UnsupportedCipherSpecException if the source throws it.
+     *  @throws UnsupportedHashSpecException if the source throws it.
+     *  @throws java.security.GeneralSecurityException if the source throws it.
+     *  @throws VerificationException if the source throws it.
+     *  @throws java.io.IOException if the source throws it.
+     *  @throws StaleRequestException if the source throws it.
+     *  @throws NonceMismatchException if the source throws it.
+     *  @throws UnrecognizedResponseCodeException if the source throws it.
+     */
+    public Credentials get(JsonValue requested, String endpoint, Source source)
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+                    , java.security.GeneralSecurityException
+                    , VerificationException
+                    , java.io.IOException
+                    , StaleRequestException
+                    , NonceMismatchException
+                    , UnrecognizedResponseCodeException
+            {
+        CredentialKey key = new CredentialKey(requested, endpoint);
+        long now = System.currentTimeMillis();
+        Entry e = this.entries.get(key);
+        if (e != null && !e.isExpired(now)) {
+            if (e.needsRefresh(now, this.refreshFraction))
+                this.refresh(key, e, source);
+            return e.credentials;
+        }
+        Credentials fresh = source.fetch();
+        this.entries.put(key, new Entry(fresh, now));
+        return fresh;
+    }//get(JsonValue, String, Source)*/
+
+    /**
+     *  Get some Credentials without blocking - from the cache if possible, from the source if not.
+     *  Refreshes ahead of expiry just like get(JsonValue, String, Source), but on the source's own
+     *  future rather than on the executor.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials are registered.
+     *  @param source where to get fresh credentials.
+     *
+     *  @return a future for some unexpired credentials.  It fails with whatever the source fails with.
+     */
+    public CompletableFuture<Credentials> getAsync(JsonValue requested, String endpoint, AsyncSource source) {
+        final CredentialKey key = new CredentialKey(requested, endpoint);
+        final long now = System.currentTimeMillis();
+        final Entry e = this.entries.get(key);
+        if (e != null && !e.isExpired(now)) {
+            if (e.needsRefresh(now, this.refreshFraction) && e.refreshing.compareAndSet(false, true)) {
+                CredentialCache.fetch(source).whenComplete((fresh, failure) -> {
+                    //On failure the old Credentials are still good - let the next caller try again.
+                    if (failure == null)
+                        this.entries.replace(key, e, new Entry(fresh, now));
+                    else
+                        e.refreshing.set(false);
+                });
+            }
+            return CompletableFuture.completedFuture(e.credentials);
+        }
+        return CredentialCache.fetch(source).thenApply(fresh -> {
+            this.entries.put(key, new Entry(fresh, now));
+            return fresh;
+        });
+    }//getAsync(JsonValue, String, AsyncSource)*/
+
+    /**
+     *  Start a fetch from an asynchronous source, turning anything it throws into a failed future.
+     *
+     *  @param source where to get fresh credentials.
+     *
+     *  @return the source's future.
+     */
+    static CompletableFuture<Credentials> fetch(AsyncSource source) {
+        try {
+            return source.fetchAsync();
+        } catch (RuntimeException | Error e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }//fetch(AsyncSource)*/
+
+    /**
+     *  Refresh an entry in the background - unless somebody else already is.
+     *
+     *  @param key the cache key.
+     *  @param stale the entry being refreshed.
+     *  @param source where to get fresh credentials.
+     */
+    private void refresh(final CredentialKey key, final Entry stale, final Source source) {
+        if (!stale.refreshing.compareAndSet(false, true))
+            return;
+        this.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long now = System.currentTimeMillis();
+                try {
+                    CredentialCache.this.entries.replace(key, stale, new Entry(source.fetch(), now));
+                } catch (Exception e) {
+                    //The old Credentials are still good - let the next caller try again.
+                    stale.refreshing.set(false);
+                }
+            }//run()*/
+        });
+    }//refresh(CredentialKey, Entry, Source)*/
+
+    /**
+     *  Forget the Credentials for a service - if the provider rejects them, for instance.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials are registered.
+     */
+    public void invalidate(JsonValue requested, String endpoint) {
+        this.entries.remove(new CredentialKey(requested, endpoint));
+    }//invalidate(JsonValue, String)*/
+
+    /**
+     *  Forget all Credentials.
+     */
+    public void clear() {
+        this.entries.clear();
+    }//clear()*/
+
+    /**
+     *  Somewhere to get fresh Credentials.
+     */
+    public interface Source {
+
+        /**
+         *  Get fresh Credentials.
+         *
+         *  @return some new credentials.
+         *
+         *  @throws UnsupportedCipherSpecException if there is no proper Cipher to speak with the
+         *      Authenticaiton Master.
+         *  @throws UnsupportedHashSpecException if there is no proper Hash to speak with the
+         *      Authenticaiton Master.
+         *  @throws java.security.GeneralSecurityException if any encryption error is encountered.
+         *  @throws VerificationException if the Signature cannot be verified.
+         *  @throws java.io.IOException if something is wrong with the machine's ability to read/write
+         *      to the network.
+         *  @throws StaleRequestException if a Response is deemed to be stale.
+         *  @throws NonceMismatchException if a Response does not include the correct nonce.
+         *  @throws UnrecognizedResponseCodeException if the response from the server is deemed unactionable.
+         */
+        Credentials fetch()
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+                    , java.security.GeneralSecurityException
+                    , VerificationException
+                    , java.io.IOException
+                    , StaleRequestException
+                    , NonceMismatchException
+                    , UnrecognizedResponseCodeException
+            ;
+    }//Source*/
+
+    /**
+     *  Somewhere to get fresh Credentials without blocking.
+     */
+    public interface AsyncSource {
+
+        /**
+         *  Start fetching fresh Credentials.
+         *
+         *  @return a future for some new credentials.  It fails with any of the exceptions
+         *      Source.fetch() may throw.
+         */
+        CompletableFuture<Credentials> fetchAsync();
+    }//AsyncSource*/
+
+    /**
+     *  Some cached Credentials, and when they were fetched.
+     */
+    private static final class Entry {
+
+        /**
+         *  The Credentials.
+         */
+        private final Credentials credentials;
+
+        /**
+         *  When the Credentials were fetched, in milliseconds since the epoch.
+         */
+        private final long fetched;
+
+        /**
+         *  When the Credentials expire, in milliseconds since the epoch.
+         */
+        private final long expires;
+
+        /**
+         *  True while a refresh is in flight.
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+        /**
+         *  Constructor.
+         *
+         *  @param credentials the Credentials.
+         *  @param fetched when they were fetched.
+         */
+        private Entry(Credentials credentials, long fetched) {
+            this.credentials = credentials;
+            this.fetched = fetched;
+            this.expires = credentials.getExpiry().getTime();
+        }//Entry(Credentials, long)*/
+
+        /**
+         *  Decide if the Credentials have expired.
+         *
+         *  @param now the current time.
+         *
+         *  @return true if the Credentials are no longer valid.
+         */
+        private boolean isExpired(long now) {
+            return now >= this.expires;
+        }//isExpired(long)*/
+
+        /**
+         *  Decide if the Credentials are due for a refresh.
+         *
+         *  @param now the current time.
+         *  @param fraction the fraction of the lifetime which, once remaining, triggers a refresh.
+         *
+         *  @return true if no more than the given fraction of the lifetime remains.
+         */
+        private boolean needsRefresh(long now, double fraction) {
+            return this.expires - now <= (this.expires - this.fetched) * fraction;
+        }//needsRefresh(long, double)*/
+    }//Entry*/
+}//CredentialCache*/
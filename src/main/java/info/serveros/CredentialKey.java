@@ -0,0 +1,57 @@
+package info.serveros;
+
+import javax.json.JsonValue;
+
+/**
+ *  Identifies a set of Credentials - the requested application, and the provider endpoint.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+final class CredentialKey {
+
+    /**
+     *  The requested application, JSON encoded.
+     */
+    private final String requested;
+
+    /**
+     *  The endpoint.
+     */
+    private final String endpoint;
+
+    /**
+     *  Constructor.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint.
+     */
+    CredentialKey(JsonValue requested, String endpoint) {
+        this.requested = requested.toString();
+        this.endpoint = endpoint;
+    }//CredentialKey(JsonValue, String)*/
+
+    /**
+     *  Hash on both parts.
+     *
+     *  @return a hash code.
+     */
+    @Override
+    public int hashCode() {
+        return this.requested.hashCode() * 31 + this.endpoint.hashCode();
+    }//hashCode()*/
+
+    /**
+     *  Keys are equal if both parts are.
+     *
+     *  @param o the other object.
+     *
+     *  @return true if the keys match.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CredentialKey))
+            return false;
+        CredentialKey other = (CredentialKey) o;
+        return this.requested.equals(other.requested) && this.endpoint.equals(other.endpoint);
+    }//equals(Object)*/
+}//CredentialKey*/
@@ -1,6 +1,5 @@
 package info.serveros;
 
-import javax.xml.bind.DatatypeConverter;
 import java.io.UnsupportedEncodingException;
 import java.security.SecureRandom;
 import info.serveros.exceptions.*;
@@ -17,12 +16,17 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.FileInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.security.spec.X509EncodedKeySpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.KeyFactory;
+import info.serveros.algorithms.Capabilities;
 import info.serveros.algorithms.CipherSpec;
+import info.serveros.algorithms.Encoding;
 import info.serveros.algorithms.HashSpec;
+import info.serveros.algorithms.Preferences;
 import info.serveros.messages.*;
+import info.serveros.metrics.Metrics;
 import javax.json.JsonObject;
 import javax.json.stream.JsonGenerator;
 
@@ -48,6 +52,11 @@ public abstract class Encrypter {
      */
     public static final String PADDING_CHARACTERS = "(?:([\\x00-\\x1F])\\1*|\\x80\\x00*|\\x00*[\\x01-\\x1F])$";
 
+    static {
+        if (Boolean.getBoolean(Capabilities.WARM_UP_PROPERTY))
+            Capabilities.warmUp();
+    }
+
     /**
      * The Preferred CipherSpecs, in order.
      */
@@ -58,6 +67,29 @@ public abstract class Encrypter {
      */
     protected HashSpec[] hashPrefs;
 
+    /**
+     * The Preferred CipherSpecs, indexed for lookup.
+     */
+    protected final Preferences<CipherSpec> cipherRanking;
+
+    /**
+     * The Preferred HashSpecs, indexed for lookup.
+     */
+    protected final Preferences<HashSpec> hashRanking;
+
+    /**
+     * The acceptable Encodings, indexed for lookup.  Just json, unless setEncodings says otherwise.
+     */
+    protected volatile Preferences<Encoding> encodingRanking = new Preferences<Encoding>(
+        Encoding.class
+        , new Encoding[] {Encoding.json}
+    );
+
+    /**
+     * Where timings and errors are reported.  Records nothing, unless setMetrics says otherwise.
+     */
+    protected volatile Metrics metrics = Metrics.NONE;
+
     /**
      *  Constructor
      *
@@ -67,6 +99,8 @@ public abstract class Encrypter {
     public Encrypter(CipherSpec[] cipherPrefs, HashSpec[] hashPrefs) {
         this.cipherPrefs = CipherSpec.filter(cipherPrefs);
         this.hashPrefs = HashSpec.filter(hashPrefs);
+        this.cipherRanking = new Preferences<CipherSpec>(CipherSpec.class, this.cipherPrefs);
+        this.hashRanking = new Preferences<HashSpec>(HashSpec.class, this.hashPrefs);
     }//Encrypter(CipherSpec[], HashSpec[])*/
 
     /**
@@ -77,22 +111,67 @@ public abstract class Encrypter {
     }//Encrypter()*/
 
     /**
-     *  Get the prefered ciphers for the encrypters.
+     *  Set the Encodings this Encrypter will offer its peers.  Anything other than json is only
+     *  used once the peer has offered it too; json is always understood when reading.
+     *
+     *  @param encodings acceptable Encodings, in order of preference.
+     */
+    public void setEncodings(Encoding[] encodings) {
+        this.encodingRanking = new Preferences<Encoding>(Encoding.class, encodings);
+    }//setEncodings(Encoding[])*/
+
+    /**
+     *  Get the Encodings this Encrypter will offer its peers.
+     *
+     *  @return acceptable Encodings, in order of preference.
+     */
+    public Encoding[] getEncodings() {
+        return this.encodingRanking.toArray();
+    }//getEncodings()*/
+
+    /**
+     *  Report timings and errors somewhere.
+     *
+     *  @param metrics where to report, or null to record nothing.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics != null ? metrics : Metrics.NONE;
+    }//setMetrics(Metrics)*/
+
+    /**
+     *  Get where timings and errors are reported.
+     *
+     *  @return the Metrics - Metrics.NONE, unless setMetrics was called.
+     */
+    public Metrics getMetrics() {
+        return this.metrics;
+    }//getMetrics()*/
+
+    /**
+     *  The Encodings to advertise to a peer.
      *
-     *  @return a clone of the cipherPrefs member.
+     *  @return acceptable Encodings, in order of preference - or null, if json is all there is.
      */
-    private CipherSpec[] cipherPrefs() {
-        return this.cipherPrefs.clone();
-    }//cipherPrefs()*/
+    protected Encoding[] advertisedEncodings() {
+        Preferences<Encoding> ranking = this.encodingRanking;
+        if (ranking.size() == 1 && ranking.contains(Encoding.json))
+            return null;
+        return ranking.toArray();
+    }//advertisedEncodings()*/
 
     /**
-     *  Get the prefered hashes for the encrypter.
+     *  Pick an Encoding to send to a peer.
      *
-     *  @return a clone of the hashPrefs member.
+     *  @param offered the Encodings the peer advertised, or null if it didn't.
+     *
+     *  @return our most preferred Encoding among those offered - or json, if there's no better.
      */
-    private HashSpec[] hashPrefs() {
-        return this.hashPrefs.clone();
-    }//hashPrefs*/
+    protected Encoding selectEncoding(Encoding[] offered) {
+        if (offered == null)
+            return Encoding.json;
+        Encoding e = this.encodingRanking.select(offered);
+        return e != null ? e : Encoding.json;
+    }//selectEncoding(Encoding[])*/
 
     /**
      *  Generate One Time credentials - if and only if the cipher requested is valid.
@@ -105,13 +184,8 @@ public abstract class Encrypter {
      */
     public OneTimeCredentials getOneTimeCredentials(CipherSpec cipher)
             throws UnsupportedCipherSpecException {
-        int i = 0;
-        for (i = 0; i < this.cipherPrefs.length; i++) {
-            if (cipher == this.cipherPrefs[i])
-                break;
-        }
-        if (i == this.cipherPrefs.length)
-            throw new UnsupportedCipherSpecException(cipher, this.cipherPrefs.clone());
+        if (!this.cipherRanking.contains(cipher))
+            throw new UnsupportedCipherSpecException(cipher, this.cipherRanking.toArray());
         return new OneTimeCredentials(cipher);
     }//getOneTimeCredentials(CipherSpec)*/
 
@@ -128,15 +202,52 @@ public abstract class Encrypter {
     public String encipher(String message, OneTimeCredentials credentials)
                 throws java.security.GeneralSecurityException
             {
-        Cipher c = credentials.cipher.getInstance();
-        c.init(Cipher.ENCRYPT_MODE, credentials.getKey(), credentials.getIV());
-        return OneTimeCredentials.toBase64(c.doFinal(message.getBytes()));
+        return this.encipher(message.getBytes(StandardCharsets.UTF_8), credentials);
     }//encipher(String, OneTimeCredentials)*/
 
+    /**
+     *  Encipher some bytes to a base64 string.
+     *
+     *  @param message The message, already encoded.
+     *  @param credentials The credentials to use to encipher the message.
+     *
+     *  @return the base64 encoded bytes of the enciphered message.
+     *
+     *  @throws GeneralSecurityException if something goes wrong enciphering.
+     */
+    public String encipher(byte[] message, OneTimeCredentials credentials)
+                throws java.security.GeneralSecurityException
+            {
+        return OneTimeCredentials.toBase64(this.encipherRaw(message, credentials));
+    }//encipher(byte[], OneTimeCredentials)*/
+
+    /**
+     *  Encipher some bytes.
+     *
+     *  @param message The message, already encoded.
+     *  @param credentials The credentials to use to encipher the message.
+     *
+     *  @return the ciphertext.
+     *
+     *  @throws GeneralSecurityException if something goes wrong enciphering.
+     */
+    private byte[] encipherRaw(byte[] message, OneTimeCredentials credentials)
+                throws java.security.GeneralSecurityException
+            {
+        Metrics m = this.metrics;
+        long start = m.start();
+        Cipher c = credentials.cipher.getCachedInstance();
+        c.init(Cipher.ENCRYPT_MODE, credentials.getKey(), credentials.getIV());
+        byte[] ciphertext = c.doFinal(message);
+        m.stop(Metrics.Timer.encipher, start);
+        return ciphertext;
+    }//encipherRaw(byte[], OneTimeCredentials)*/
+
     /**
      *  Encippher an Object to a base64 String.
      *
-     *  @param message An object (which will be coerced to String)
+     *  @param message An object (which will be coerced to String - or written straight to bytes,
+     *      if it's JSONable)
      *  @param credentials The credentials to encipher the message with.
      *
      *  @return the bas264 encoded bytes of the enciphered mesage.
@@ -146,8 +257,45 @@ public abstract class Encrypter {
     public String encipher(Object message, OneTimeCredentials credentials)
                 throws java.security.GeneralSecurityException
             {
-        return this.encipher(message.toString(), credentials);
-    }//encipher(String, OneTimeCredentials)*/
+        return this.encipher(this.toBytes(message, Encoding.json), credentials);
+    }//encipher(Object, OneTimeCredentials)*/
+
+    /**
+     *  Encipher an Object to a base64 String, in a particular Encoding.
+     *
+     *  @param message An object (which will be coerced to String - or encoded as requested, if
+     *      it's JSONable)
+     *  @param credentials The credentials to encipher the message with.
+     *  @param encoding how to encode the message.
+     *
+     *  @return the base64 encoded bytes of the enciphered mesage.
+     *
+     *  @throws GeneralSecurityException if an error is encountered enciphering.
+     */
+    public String encipher(Object message, OneTimeCredentials credentials, Encoding encoding)
+                throws java.security.GeneralSecurityException
+            {
+        return this.encipher(this.toBytes(message, encoding), credentials);
+    }//encipher(Object, OneTimeCredentials, Encoding)*/
+
+    /**
+     *  Encode a message, ready to be enciphered.
+     *
+     *  @param message An object (which will be coerced to String - or written straight to bytes,
+     *      if it's JSONable)
+     *  @param encoding how to encode a JSONable message.
+     *
+     *  @return the message, encoded as requested - or as UTF-8, if it isn't JSONable.
+     */
+    private byte[] toBytes(Object message, Encoding encoding) {
+        if (!(message instanceof JSONable))
+            return message.toString().getBytes(StandardCharsets.UTF_8);
+        Metrics m = this.metrics;
+        long start = m.start();
+        byte[] bytes = ((JSONable) message).toBytes(encoding);
+        m.stop(Metrics.Timer.encode, start);
+        return bytes;
+    }//toBytes(Object, Encoding)*/
 
 
     /**
@@ -163,11 +311,34 @@ public abstract class Encrypter {
     public JsonObject decipher(String bytes, OneTimeCredentials credentials)
             throws java.security.GeneralSecurityException
             {
-        Cipher c = credentials.cipher.getInstance();
-        c.init(Cipher.DECRYPT_MODE, credentials.getKey(), credentials.getIV());
-        return JSONable.unJSON(new String(c.doFinal(OneTimeCredentials.fromBase64(bytes))));
+        return this.decipherRaw(OneTimeCredentials.fromBase64(bytes), credentials);
     }//decipher(String, OneTimeCredentials)*/
 
+    /**
+     *  Decipher some ciphertext back to a message.
+     *
+     *  @param ciphertext the ciphertext.
+     *  @param credentials the credentials originally used to encipher the message.
+     *
+     *  @return The deciphered message.
+     *
+     *  @throws GeneralSecurityException if something goes wrong deciphering.
+     */
+    private JsonObject decipherRaw(byte[] ciphertext, OneTimeCredentials credentials)
+            throws java.security.GeneralSecurityException
+            {
+        Metrics m = this.metrics;
+        long start = m.start();
+        Cipher c = credentials.cipher.getCachedInstance();
+        c.init(Cipher.DECRYPT_MODE, credentials.getKey(), credentials.getIV());
+        byte[] plaintext = c.doFinal(ciphertext);
+        m.stop(Metrics.Timer.decipher, start);
+        start = m.start();
+        JsonObject message = JSONable.unpack(plaintext);
+        m.stop(Metrics.Timer.decode, start);
+        return message;
+    }//decipherRaw(byte[], OneTimeCredentials)*/
+
     /**
      *  Encrypt a message with an RSA key.
      *
@@ -184,14 +355,34 @@ public abstract class Encrypter {
                 throws UnsupportedCipherSpecException
                     , java.security.GeneralSecurityException
             {
-        OneTimeCredentials credentials = this.getOneTimeCredentials(cipher);
-        String enciphered = this.encipher(message, credentials);
-        String lock = credentials.toJSON();
-        Cipher c = Cipher.getInstance("RSA/ECB/OAEPWithSHA1AndMGF1Padding");
-        c.init(Cipher.ENCRYPT_MODE, rsaKey);
-        return enciphered + Encrypter.DELIMITER + OneTimeCredentials.toBase64(c.doFinal(credentials.toJSON().getBytes()));
+        return this.seal(rsaKey, message, cipher).toString();
     }//encrypt(Key, String, CipherSpec)*/
 
+    /**
+     *  Encrypt a message with an RSA key, into an Envelope.
+     *
+     *  @param rsaKey the key to use.
+     *  @param message the message to encrypt.
+     *  @param cipher the CipherSpec algorithm to use.
+     *
+     *  @return the encrypted message.
+     *
+     *  @throws UnsupportedCipherSpecException if the requested cipher is not allowed for this Encrypter
+     *  @throws GeneralSecurityException if something goes wrong enciphering.
+     */
+    public Envelope seal(Key rsaKey, Object message, CipherSpec cipher)
+                throws UnsupportedCipherSpecException
+                    , java.security.GeneralSecurityException
+            {
+        OneTimeCredentials credentials = this.getOneTimeCredentials(cipher);
+        byte[] ciphertext = this.encipherRaw(this.toBytes(message, Encoding.json), credentials);
+        Metrics m = this.metrics;
+        long start = m.start();
+        byte[] wrappedKey = RSACipherCache.doFinal(Cipher.ENCRYPT_MODE, rsaKey, credentials.toJSONBytes());
+        m.stop(Metrics.Timer.rsa_wrap, start);
+        return Envelope.seal(ciphertext, wrappedKey);
+    }//seal(Key, Object, CipherSpec)*/
+
     /**
      *  Decrypt the message encrypted with the encrypt method.
      *
@@ -205,13 +396,61 @@ public abstract class Encrypter {
     public JsonObject decrypt(Key rsaKey, String encrypted)
                 throws java.security.GeneralSecurityException
             {
-        String[] pieces = encrypted.split(Encrypter.DELIMITER);
-        Cipher c = Cipher.getInstance("RSA/ECB/OAEPWithSHA1AndMGF1Padding");
-        c.init(Cipher.DECRYPT_MODE, rsaKey);
-        OneTimeCredentials credentials = new OneTimeCredentials(new String(c.doFinal(OneTimeCredentials.fromBase64(pieces[1]))));
-        return this.decipher(pieces[0], credentials);
+        return this.decrypt(rsaKey, Envelope.parse(encrypted));
     }//decrypt(Key, String)*/
 
+    /**
+     *  Decrypt an Envelope.
+     *
+     *  @param rsaKey the key to decrypt with.
+     *  @param envelope the encrypted information.
+     *
+     *  @return the decrypted data.
+     *
+     *  @throws GeneralSecurityException if something goes wrong deciphering.
+     */
+    public JsonObject decrypt(Key rsaKey, Envelope envelope)
+                throws java.security.GeneralSecurityException
+            {
+        return this.decrypt(envelope, this.unwrap(rsaKey, envelope));
+    }//decrypt(Key, Envelope)*/
+
+    /**
+     *  Unwrap the one time credentials an Envelope was enciphered with, without deciphering it.
+     *
+     *  @param rsaKey the key to decrypt with.
+     *  @param envelope the encrypted information.
+     *
+     *  @return the credentials - including the Cipher the sender chose.
+     *
+     *  @throws GeneralSecurityException if something goes wrong decrypting.
+     */
+    OneTimeCredentials unwrap(Key rsaKey, Envelope envelope)
+                throws java.security.GeneralSecurityException
+            {
+        Metrics m = this.metrics;
+        long start = m.start();
+        byte[] unwrapped = RSACipherCache.doFinal(Cipher.DECRYPT_MODE, rsaKey, envelope.getWrappedKey());
+        m.stop(Metrics.Timer.rsa_unwrap, start);
+        return new OneTimeCredentials(new String(unwrapped, StandardCharsets.UTF_8));
+    }//unwrap(Key, Envelope)*/
+
+    /**
+     *  Decipher an Envelope with credentials already unwrapped.
+     *
+     *  @param envelope the encrypted information.
+     *  @param credentials the credentials from unwrap.
+     *
+     *  @return the decrypted data.
+     *
+     *  @throws GeneralSecurityException if something goes wrong deciphering.
+     */
+    JsonObject decrypt(Envelope envelope, OneTimeCredentials credentials)
+                throws java.security.GeneralSecurityException
+            {
+        return this.decipherRaw(envelope.getCiphertext(), credentials);
+    }//decrypt(Envelope, OneTimeCredentials)*/
+
     /**
      *  Sign some data.
      *
@@ -228,19 +467,34 @@ public abstract class Encrypter {
                 throws java.security.GeneralSecurityException
                     , UnsupportedHashSpecException
             {
-        int i = 0;
-        for (i = 0; i < this.hashPrefs.length; i++) {
-            if (algorithm == this.hashPrefs[i])
-                break;
-        }
-        if (i == this.hashPrefs.length)
-            throw new UnsupportedHashSpecException(algorithm, this.hashPrefs.clone());
-        Signature s = algorithm.getInstance();
-        s.initSign(rsaKey);
-        s.update(data.getBytes());
-        return OneTimeCredentials.toBase64(s.sign());
+        return this.sign(rsaKey, data.getBytes(StandardCharsets.UTF_8), algorithm);
     }//sign(PrivateKey, String, HashSpec)*/
 
+    /**
+     *  Sign some bytes.
+     *
+     *  @param rsaKey the private key to sign with.
+     *  @param data the data to sign.
+     *  @param algorithm The hash algorithm to use.
+     *
+     *  @return the base64 encoded signature.
+     *
+     *  @throws UnsupportedHashSpecException if the requested hash is not supported by the Encrypter.
+     *  @throws GeneralSecurityException if something goes wrong signing.
+     */
+    private String sign(PrivateKey rsaKey, byte[] data, HashSpec algorithm)
+                throws java.security.GeneralSecurityException
+                    , UnsupportedHashSpecException
+            {
+        if (!this.hashRanking.contains(algorithm))
+            throw new UnsupportedHashSpecException(algorithm, this.hashRanking.toArray());
+        Metrics m = this.metrics;
+        long start = m.start();
+        byte[] signature = SignatureCache.sign(rsaKey, data, algorithm);
+        m.stop(Metrics.Timer.sign, start);
+        return OneTimeCredentials.toBase64(signature);
+    }//sign(PrivateKey, byte[], HashSpec)*/
+
     /**
      *  Verify a signature.
      *
@@ -256,12 +510,31 @@ public abstract class Encrypter {
     public boolean verify(PublicKey rsaKey, String data, HashSpec algorithm, String signature)
                 throws java.security.GeneralSecurityException
             {
-        Signature s = algorithm.getInstance();
-        s.initVerify(rsaKey);
-        s.update(data.getBytes());
-        return s.verify(OneTimeCredentials.fromBase64(signature));
+        return this.verify(rsaKey, data.getBytes(StandardCharsets.UTF_8), algorithm, OneTimeCredentials.fromBase64(signature));
     }//verify(PublicKey, String, HashSpec, String)*/
 
+    /**
+     *  Verify a signature over some bytes.
+     *
+     *  @param rsaKey the public key to verify the signature against.
+     *  @param data the data that was signed.
+     *  @param algorithm the hash used to sign the data.
+     *  @param signature the signature.
+     *
+     *  @return true if the signatures match, false otherwise.
+     *
+     *  @throws GeneralSecurityException if something goes wrong verifying.
+     */
+    boolean verify(PublicKey rsaKey, byte[] data, HashSpec algorithm, byte[] signature)
+                throws java.security.GeneralSecurityException
+            {
+        Metrics m = this.metrics;
+        long start = m.start();
+        boolean verified = SignatureCache.verify(rsaKey, data, algorithm, signature);
+        m.stop(Metrics.Timer.verify, start);
+        return verified;
+    }//verify(PublicKey, byte[], HashSpec, byte[])*/
+
     /**
      *  Decide if a timestamp is stale.
      *
@@ -306,9 +579,9 @@ public abstract class Encrypter {
                     , UnsupportedHashSpecException
                     , java.security.GeneralSecurityException
             {
-        String encrypted = this.encrypt(encryptKey, message, cipher);
-        String signed = this.sign(signKey, encrypted, hash);
-        return new CryptoMessage(encrypted, signed, hash);
+        Envelope encrypted = this.seal(encryptKey, message, cipher);
+        String signed = this.sign(signKey, encrypted.getBytes(), hash);
+        return new CryptoMessage(encrypted.toString(), signed, hash);
     }//encryptAndSign(Key, PrivateKey, String, CipherSpec, HashSpec)*/
 
 
@@ -328,8 +601,10 @@ public abstract class Encrypter {
                 throws java.security.GeneralSecurityException
                     , VerificationException
             {
-        JsonObject decrypted = this.decrypt(decryptKey, message.message);
-        if (!this.verify(verifyKey, message.message, HashSpec.fromString(decrypted.getString("hash")), message.signature)) {
+        Envelope envelope = Envelope.parse(message.message);
+        JsonObject decrypted = this.decrypt(decryptKey, envelope);
+        HashSpec hash = HashSpec.fromString(decrypted.getString("hash"));
+        if (!this.verify(verifyKey, envelope.getBytes(), hash, OneTimeCredentials.fromBase64(message.signature))) {
             throw new VerificationException();
         }
         return decrypted;
@@ -0,0 +1,154 @@
+package info.serveros;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ *  The body of an encrypted message - the enciphered message and the RSA-wrapped one time
+ *  credentials, each base64 encoded, separated by Encrypter.DELIMITER.  Held as a single array of
+ *  ASCII bytes with the delimiter's position, so neither half is copied out until it's decoded.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public final class Envelope {
+
+    /**
+     *  The delimiter, as a byte.
+     */
+    private static final byte DELIMITER = (byte) Encrypter.DELIMITER.charAt(0);
+
+    /**
+     *  The encoded envelope, as ASCII.
+     */
+    private final byte[] bytes;
+
+    /**
+     *  The position of the delimiter in bytes.
+     */
+    private final int delimiter;
+
+    /**
+     *  Constructor.
+     *
+     *  @param bytes the encoded envelope, as ASCII.  Not copied.
+     *  @param delimiter the position of the delimiter.
+     */
+    private Envelope(byte[] bytes, int delimiter) {
+        this.bytes = bytes;
+        this.delimiter = delimiter;
+    }//Envelope(byte[], int)*/
+
+    /**
+     *  Seal some ciphertext and a wrapped key into an envelope.  Both are encoded straight into the
+     *  final array.
+     *
+     *  @param ciphertext the enciphered message.
+     *  @param wrappedKey the RSA-encrypted one time credentials.
+     *
+     *  @return the envelope.
+     */
+    public static Envelope seal(byte[] ciphertext, byte[] wrappedKey) {
+        Base64Codec b64 = Base64Codec.STANDARD;
+        int delimiter = b64.encodedLength(ciphertext.length);
+        byte[] bytes = new byte[delimiter + 1 + b64.encodedLength(wrappedKey.length)];
+        b64.encode(ciphertext, 0, ciphertext.length, bytes, 0);
+        bytes[delimiter] = Envelope.DELIMITER;
+        b64.encode(wrappedKey, 0, wrappedKey.length, bytes, delimiter + 1);
+        return new Envelope(bytes, delimiter);
+    }//seal(byte[], byte[])*/
+
+    /**
+     *  Read an envelope, in a single pass over its characters.
+     *
+     *  @param encoded the envelope, as produced by toString().
+     *
+     *  @return the envelope.
+     *
+     *  @throws java.security.GeneralSecurityException if the string isn't an envelope.
+     */
+    public static Envelope parse(String encoded)
+                throws java.security.GeneralSecurityException
+            {
+        int length = encoded.length();
+        byte[] bytes = new byte[length];
+        int delimiter = -1;
+        for (int i = 0; i < length; i++) {
+            char c = encoded.charAt(i);
+            if (c > 0x7f)
+                throw new java.security.GeneralSecurityException("Malformed envelope: non-ASCII character at " + i);
+            if (c == Envelope.DELIMITER && delimiter < 0)
+                delimiter = i;
+            bytes[i] = (byte) c;
+        }
+        if (delimiter < 0)
+            throw new java.security.GeneralSecurityException("Malformed envelope: no delimiter");
+        return new Envelope(bytes, delimiter);
+    }//parse(String)*/
+
+    /**
+     *  Decode the enciphered message.
+     *
+     *  @return the ciphertext.
+     *
+     *  @throws java.security.GeneralSecurityException if it isn't valid base64.
+     */
+    public byte[] getCiphertext()
+                throws java.security.GeneralSecurityException
+            {
+        return this.decode(0, this.delimiter);
+    }//getCiphertext()*/
+
+    /**
+     *  Decode the wrapped one time credentials.
+     *
+     *  @return the RSA-encrypted credentials.
+     *
+     *  @throws java.security.GeneralSecurityException if they aren't valid base64.
+     */
+    public byte[] getWrappedKey()
+                throws java.security.GeneralSecurityException
+            {
+        return this.decode(this.delimiter + 1, this.bytes.length);
+    }//getWrappedKey()*/
+
+    /**
+     *  Get the encoded envelope - what gets signed.
+     *
+     *  @return the encoded envelope, as ASCII.  Not copied - don't modify it.
+     */
+    byte[] getBytes() {
+        return this.bytes;
+    }//getBytes()*/
+
+    /**
+     *  Decode a range of the envelope.
+     *
+     *  @param from the first character.
+     *  @param to one past the last character.
+     *
+     *  @return the decoded bytes.
+     *
+     *  @throws java.security.GeneralSecurityException if the range isn't valid base64.
+     */
+    private byte[] decode(int from, int to)
+                throws java.security.GeneralSecurityException
+            {
+        byte[] out = new byte[Base64Codec.maxDecodedLength(to - from)];
+        int n;
+        try {
+            n = Base64Codec.STANDARD.decode(this.bytes, from, to - from, out, 0);
+        } catch (IllegalArgumentException e) {
+            throw new java.security.GeneralSecurityException("Malformed envelope", e);
+        }
+        return n == out.length ? out : java.util.Arrays.copyOf(out, n);
+    }//decode(int, int)*/
+
+    /**
+     *  The encoded envelope.
+     *
+     *  @return the enciphered message and wrapped key, base64 encoded and delimited.
+     */
+    @Override
+    public String toString() {
+        return new String(this.bytes, StandardCharsets.US_ASCII);
+    }//toString()*/
+}//Envelope*/
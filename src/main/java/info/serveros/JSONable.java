@@ -4,11 +4,18 @@ import javax.json.stream.JsonGenerator;
 import java.io.StringWriter;
 import javax.json.Json;
 import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.JsonBuilderFactory;
+import info.serveros.algorithms.Encoding;
+import javax.json.stream.JsonGeneratorFactory;
 import javax.json.JsonObject;
 import java.io.StringReader;
 import javax.json.JsonValue;
 import java.io.Writer;
 import java.io.OutputStream;
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 
 /**
  *  A thing that can be Output as JSON.
@@ -79,7 +86,7 @@ public abstract class JSONable implements JsonValue{
      *  @param w The writer to write to.
      */
     public void toJSON(Writer w) {
-        this.handleGenerator(Json.createGenerator(w));
+        this.handleGenerator(JSONable.getGeneratorFactory().createGenerator(w));
     }//toJSON(Writer)*/
 
     /**
@@ -88,9 +95,75 @@ public abstract class JSONable implements JsonValue{
      *  @param o OutputStream to write to.
      */
     public void toJSON(OutputStream o) {
-        this.handleGenerator(Json.createGenerator(o));
+        this.handleGenerator(JSONable.getGeneratorFactory().createGenerator(o));
     }//toJson(OutputStream)*/
 
+    /**
+     *  Turn this object into UTF-8 encoded JSON, without building a String along the way.  The
+     *  JSON is written into a buffer belonging to the current thread, so only the result is
+     *  allocated.
+     *
+     *  @return the JSON, encoded as UTF-8.
+     */
+    public byte[] toJSONBytes() {
+        return this.toBytes(Encoding.json);
+    }//toJSONBytes()*/
+
+    /**
+     *  Write CBOR to an OutputStream - the same fields as toJSON, in binary.
+     *
+     *  @param o OutputStream to write to.
+     */
+    public void toCBOR(OutputStream o) {
+        this.handleGenerator(new CborGenerator(o));
+    }//toCBOR(OutputStream)*/
+
+    /**
+     *  Encode this object, without building a String along the way.  Written into a buffer
+     *  belonging to the current thread, so only the result is allocated.
+     *
+     *  @param encoding how to encode it.
+     *
+     *  @return the encoded object - UTF-8 JSON, or CBOR.
+     */
+    public byte[] toBytes(Encoding encoding) {
+        Buffer b = JSONable.buffers.get();
+        b.reset();
+        if (encoding == Encoding.cbor)
+            this.toCBOR(b);
+        else
+            this.toJSON(b);
+        byte[] bytes = b.toByteArray();
+        if (b.capacity() > Buffer.MAX_RETAINED)
+            JSONable.buffers.remove();
+        return bytes;
+    }//toBytes(Encoding)*/
+
+    /**
+     *  Write UTF-8 encoded JSON straight into a buffer, starting at its position.
+     *
+     *  @param target the buffer to write to.  Its position is advanced past the JSON.
+     *
+     *  @return the number of bytes written.
+     *
+     *  @throws java.nio.BufferOverflowException if the JSON doesn't fit in the buffer's remaining space.
+     */
+    public int writeTo(final ByteBuffer target) {
+        int start = target.position();
+        this.toJSON(new OutputStream() {
+            @Override
+            public void write(int b) {
+                target.put((byte) b);
+            }//write(int)*/
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                target.put(b, off, len);
+            }//write(byte[], int, int)*/
+        });
+        return target.position() - start;
+    }//writeTo(ByteBuffer)*/
+
     /**
      *  Add Json elements of the current object to the already started JSON object.
      *
@@ -116,9 +189,128 @@ public abstract class JSONable implements JsonValue{
      *  @return the decoded object.
      */
     public static JsonObject unJSON(String json) {
-        JsonReader reader = Json.createReader(new StringReader(json));
+        JsonReader reader = JSONable.getReaderFactory().createReader(new StringReader(json));
         JsonObject obj = reader.readObject();
         reader.close();
         return obj;
     }//unJSON(String)*/
+
+    /**
+     *  Unwrap Json straight from a stream, without building a String first.  The parser reads
+     *  through a pooled buffer - handed back when the reader is closed - and detects the encoding
+     *  as the Json spec describes.
+     *
+     *  @param json A stream containing a json object.  Closed once read.
+     *
+     *  @return the decoded object.
+     */
+    public static JsonObject unJSON(InputStream json) {
+        JsonReader reader = JSONable.getReaderFactory().createReader(json);
+        JsonObject obj = reader.readObject();
+        reader.close();
+        return obj;
+    }//unJSON(InputStream)*/
+
+    /**
+     *  Unwrap an encoded object, whichever way it was encoded.  A JSON object starts with a brace
+     *  or whitespace, never with a byte of CBOR's map type, so the first byte tells them apart.
+     *
+     *  @param bytes UTF-8 JSON, or CBOR.
+     *
+     *  @return the decoded object.
+     *
+     *  @throws javax.json.JsonException if the bytes are neither.
+     */
+    public static JsonObject unpack(byte[] bytes) {
+        if (bytes.length > 0 && (bytes[0] & 0xe0) == 0xa0)
+            return CborReader.readObject(bytes, 0, bytes.length);
+        return JSONable.unJSON(new java.io.ByteArrayInputStream(bytes));
+    }//unpack(byte[])*/
+
+    /**
+     *  Get the shared JsonGeneratorFactory.  Json.createGenerator looks the JsonProvider up
+     *  again on every call, so every message written goes through this instead.
+     *
+     *  @return a factory for JsonGenerators, safe to share between threads.
+     */
+    public static JsonGeneratorFactory getGeneratorFactory() {
+        return Factories.GENERATORS;
+    }//getGeneratorFactory()*/
+
+    /**
+     *  Get the shared JsonReaderFactory.  Json.createReader looks the JsonProvider up again on
+     *  every call, so every message read goes through this instead.
+     *
+     *  @return a factory for JsonReaders, safe to share between threads.
+     */
+    public static JsonReaderFactory getReaderFactory() {
+        return Factories.READERS;
+    }//getReaderFactory()*/
+
+    /**
+     *  The per-thread buffers behind toJSONBytes.
+     */
+    private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }//initialValue()*/
+    };
+
+    /**
+     *  A reusable byte buffer that knows how big it has grown.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        /**
+         *  Buffers grown past this many bytes are dropped after use, rather than kept around.
+         */
+        private static final int MAX_RETAINED = 64 * 1024;
+
+        /**
+         *  Constructor.
+         */
+        private Buffer() {
+            super(1024);
+        }//Buffer()*/
+
+        /**
+         *  The size of the backing array.
+         *
+         *  @return the number of bytes the buffer can hold without growing.
+         */
+        private int capacity() {
+            return this.buf.length;
+        }//capacity()*/
+    }//Buffer*/
+
+    /**
+     *  Get the shared JsonBuilderFactory.
+     *
+     *  @return a factory for JsonObjectBuilders and JsonArrayBuilders, safe to share between threads.
+     */
+    public static JsonBuilderFactory getBuilderFactory() {
+        return Factories.BUILDERS;
+    }//getBuilderFactory()*/
+
+    /**
+     *  Holds the shared factories - built the first time any JSON is read or written.
+     */
+    private static final class Factories {
+
+        /**
+         *  The shared JsonGeneratorFactory, with the default configuration.
+         */
+        private static final JsonGeneratorFactory GENERATORS = Json.createGeneratorFactory(null);
+
+        /**
+         *  The shared JsonReaderFactory, with the default configuration.
+         */
+        private static final JsonReaderFactory READERS = Json.createReaderFactory(null);
+
+        /**
+         *  The shared JsonBuilderFactory, with the default configuration.
+         */
+        private static final JsonBuilderFactory BUILDERS = Json.createBuilderFactory(null);
+    }//Factories*/
 }//JSONable*/
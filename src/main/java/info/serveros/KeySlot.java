@@ -0,0 +1,83 @@
+package info.serveros;
+
+import java.security.Key;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  A key for the per-thread engine caches - the identity of a long lived Key, plus a small int that
+ *  says what the engine was initialized to do with it, like a Cipher mode or a hash.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+final class KeySlot {
+
+    /**
+     *  What the engine does with the key.
+     */
+    private final int variant;
+
+    /**
+     *  The Key.
+     */
+    private final Key key;
+
+    /**
+     *  Constructor.
+     *
+     *  @param variant what the engine does with the key.
+     *  @param key the key.
+     */
+    KeySlot(int variant, Key key) {
+        this.variant = variant;
+        this.key = key;
+    }//KeySlot(int, Key)*/
+
+    /**
+     *  Make a per-thread cache of initialized engines, which forgets the least recently used engine
+     *  once it holds too many.
+     *
+     *  @param <E> the engine type.
+     *  @param max the most engines any one thread will keep.
+     *
+     *  @return the per-thread cache.
+     */
+    static <E> ThreadLocal<Map<KeySlot, E>> perThread(final int max) {
+        return new ThreadLocal<Map<KeySlot, E>>() {
+            @Override
+            protected Map<KeySlot, E> initialValue() {
+                return new LinkedHashMap<KeySlot, E>(max, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<KeySlot, E> eldest) {
+                        return this.size() > max;
+                    }//removeEldestEntry(Map.Entry)*/
+                };
+            }//initialValue()*/
+        };
+    }//perThread(int)*/
+
+    /**
+     *  Hash on the identity of the key.
+     *
+     *  @return a hash code.
+     */
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this.key) * 31 + this.variant;
+    }//hashCode()*/
+
+    /**
+     *  Slots are equal if they have the same variant and the very same key.
+     *
+     *  @param o the other object.
+     *
+     *  @return true if the slots match.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof KeySlot))
+            return false;
+        KeySlot other = (KeySlot) o;
+        return this.variant == other.variant && this.key == other.key;
+    }//equals(Object)*/
+}//KeySlot*/
@@ -0,0 +1,301 @@
+package info.serveros;
+
+import info.serveros.algorithms.CipherSpec;
+import info.serveros.algorithms.HashSpec;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *  The Cipher and Hash agreed with each Authentication Master.  Once a Master has rejected an
+ *  algorithm and we've picked another, every Consumer talking to that Master should use the new
+ *  pair straight away, rather than paying for the same 409 or 490 again.  Agreements are kept per
+ *  Master and per set of algorithms a Consumer speaks - see key - so Consumers with different
+ *  preferences sharing a cache don't keep overwriting each other's agreement.  Optionally backed
+ *  by a file, so the agreements survive a restart.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class NegotiationCache {
+
+    /**
+     *  The agreements, keyed by the Master's location and the algorithms the Consumer speaks.
+     */
+    private final ConcurrentMap<String, Agreement> agreements = new ConcurrentHashMap<String, Agreement>();
+
+    /**
+     *  Where agreements are saved - or null, to keep them in memory only.
+     */
+    private final Path file;
+
+    /**
+     *  Constructor.  Agreements are kept in memory only.
+     */
+    public NegotiationCache() {
+        this.file = null;
+    }//NegotiationCache()*/
+
+    /**
+     *  Constructor.  Agreements are loaded from the file, if it exists, and the file is rewritten
+     *  every time an agreement changes.
+     *
+     *  @param file where agreements should be saved.
+     *
+     *  @throws java.io.IOException if the file exists, but cannot be read.
+     */
+    public NegotiationCache(Path file)
+                throws java.io.IOException
+            {
+        this.file = file;
+        if (Files.exists(file))
+            this.load(file);
+    }//NegotiationCache(Path)*/
+
+    /**
+     *  Get the shared cache.
+     *
+     *  @return the in-memory cache used by every Consumer that hasn't been given its own.
+     */
+    public static NegotiationCache shared() {
+        return Shared.INSTANCE;
+    }//shared()*/
+
+    /**
+     *  Build the key for an agreement.  The algorithms are taken as sets, so Consumers that speak
+     *  the same ones in a different order share an agreement - either can use it.
+     *
+     *  @param masterLocation the host/port for the master server.
+     *  @param ciphers the Ciphers the Consumer speaks.
+     *  @param hashes the Hashes the Consumer speaks.
+     *
+     *  @return the key.
+     */
+    public static String key(String masterLocation, CipherSpec[] ciphers, HashSpec[] hashes) {
+        EnumSet<CipherSpec> c = EnumSet.noneOf(CipherSpec.class);
+        c.addAll(Arrays.asList(ciphers));
+        EnumSet<HashSpec> h = EnumSet.noneOf(HashSpec.class);
+        h.addAll(Arrays.asList(hashes));
+        StringBuilder b = new StringBuilder(masterLocation);
+        for (CipherSpec cipher: c)
+            b.append(' ').append(cipher.name());
+        b.append(" /");
+        for (HashSpec hash: h)
+            b.append(' ').append(hash.name());
+        return b.toString();
+    }//key(String, CipherSpec[], HashSpec[])*/
+
+    /**
+     *  Get an agreement.
+     *
+     *  @param key the Master and the Consumer's algorithms, from key.
+     *
+     *  @return the agreed algorithms, or null if nothing has been agreed yet.
+     */
+    public Agreement get(String key) {
+        return this.agreements.get(key);
+    }//get(String)*/
+
+    /**
+     *  Record an agreement, and save it if the cache is backed by a file.
+     *
+     *  @param key the Master and the Consumer's algorithms, from key.
+     *  @param agreement the agreed algorithms.
+     */
+    public void put(String key, Agreement agreement) {
+        if (!agreement.equals(this.agreements.put(key, agreement)))
+            this.autoSave();
+    }//put(String, Agreement)*/
+
+    /**
+     *  Forget an agreement.
+     *
+     *  @param key the Master and the Consumer's algorithms, from key.
+     */
+    public void remove(String key) {
+        if (this.agreements.remove(key) != null)
+            this.autoSave();
+    }//remove(String)*/
+
+    /**
+     *  Save every agreement to a file.  The file is written beside the target and moved into place,
+     *  so a reader never sees half of it.
+     *
+     *  @param target where to save.
+     *
+     *  @throws java.io.IOException if the file cannot be written.
+     */
+    public synchronized void save(Path target)
+                throws java.io.IOException
+            {
+        Properties props = new Properties();
+        for (Map.Entry<String, Agreement> e: this.agreements.entrySet())
+            props.setProperty(e.getKey(), e.getValue().toString());
+        Path dir = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                props.store(out, "Serveros negotiated algorithms");
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }//save(Path)*/
+
+    /**
+     *  Load agreements from a file.  Entries naming algorithms this version doesn't know are skipped.
+     *
+     *  @param source where to load from.
+     *
+     *  @throws java.io.IOException if the file cannot be read.
+     */
+    public void load(Path source)
+                throws java.io.IOException
+            {
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(source)) {
+            props.load(in);
+        }
+        for (String key: props.stringPropertyNames()) {
+            Agreement a = Agreement.parse(props.getProperty(key));
+            if (a != null)
+                this.agreements.put(key, a);
+        }
+    }//load(Path)*/
+
+    /**
+     *  Save to the backing file, if there is one.
+     */
+    private void autoSave() {
+        if (this.file == null)
+            return;
+        try {
+            this.save(this.file);
+        } catch (java.io.IOException e) {
+            //The agreement still holds in memory; at worst, a restart renegotiates.
+        }
+    }//autoSave()*/
+
+    /**
+     *  A Cipher and Hash, agreed together.  Immutable, so a request never pairs the Cipher from
+     *  one agreement with the Hash from another.
+     */
+    public static final class Agreement {
+
+        /**
+         *  The Cipher to use with the Master.
+         */
+        public final CipherSpec cipher;
+
+        /**
+         *  The Hash to use with the Master.
+         */
+        public final HashSpec hash;
+
+        /**
+         *  Constructor.
+         *
+         *  @param cipher the Cipher to use with the Master.
+         *  @param hash the Hash to use with the Master.
+         */
+        public Agreement(CipherSpec cipher, HashSpec hash) {
+            this.cipher = cipher;
+            this.hash = hash;
+        }//Agreement(CipherSpec, HashSpec)*/
+
+        /**
+         *  Swap the Cipher.
+         *
+         *  @param cipher the new Cipher.
+         *
+         *  @return an agreement with the new Cipher, and the same Hash.
+         */
+        public Agreement withCipher(CipherSpec cipher) {
+            return new Agreement(cipher, this.hash);
+        }//withCipher(CipherSpec)*/
+
+        /**
+         *  Swap the Hash.
+         *
+         *  @param hash the new Hash.
+         *
+         *  @return an agreement with the same Cipher, and the new Hash.
+         */
+        public Agreement withHash(HashSpec hash) {
+            return new Agreement(this.cipher, hash);
+        }//withHash(HashSpec)*/
+
+        /**
+         *  Read an agreement back from toString().
+         *
+         *  @param s the saved form.
+         *
+         *  @return the agreement, or null if it can't be understood.
+         */
+        static Agreement parse(String s) {
+            String[] parts = s.trim().split("\\s+");
+            if (parts.length != 2)
+                return null;
+            try {
+                return new Agreement(CipherSpec.valueOf(parts[0]), HashSpec.valueOf(parts[1]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }//parse(String)*/
+
+        /**
+         *  Compare two agreements.
+         *
+         *  @param o the other object.
+         *
+         *  @return true if both name the same Cipher and Hash.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Agreement))
+                return false;
+            Agreement other = (Agreement) o;
+            return this.cipher == other.cipher && this.hash == other.hash;
+        }//equals(Object)*/
+
+        /**
+         *  Hash the agreement.
+         *
+         *  @return a hash code consistent with equals.
+         */
+        @Override
+        public int hashCode() {
+            return 31 * (this.cipher == null ? 0 : this.cipher.hashCode())
+                + (this.hash == null ? 0 : this.hash.hashCode());
+        }//hashCode()*/
+
+        /**
+         *  The saved form.
+         *
+         *  @return the Cipher and Hash names, separated by a space.
+         */
+        @Override
+        public String toString() {
+            return this.cipher.name() + " " + this.hash.name();
+        }//toString()*/
+    }//Agreement*/
+
+    /**
+     *  Holds the shared cache - built the first time anyone asks for it.
+     */
+    private static final class Shared {
+
+        /**
+         *  The shared cache.
+         */
+        private static final NegotiationCache INSTANCE = new NegotiationCache();
+    }//Shared*/
+}//NegotiationCache*/
@@ -1,6 +1,5 @@
 package info.serveros;
 
-import javax.xml.bind.DatatypeConverter;
 import java.security.SecureRandom;
 import java.util.Random;
 import javax.crypto.spec.IvParameterSpec;
@@ -43,9 +42,10 @@ public class OneTimeCredentials extends JSONable {
     public final HashSpec hash;
 
     /**
-     *  Default SecureRandom for the calss.
+     *  Default source of randomness for the class - a SecureRandom per thread, so that concurrent
+     *  key generation doesn't contend on a single lock.
      */
-    private static final SecureRandom generator = new SecureRandom();
+    private static final Random generator = new ThreadLocalSecureRandom();
 
     /**
      *  Constructor with prebuilt credentials as byte arrays.
@@ -99,7 +99,7 @@ public class OneTimeCredentials extends JSONable {
     /**
      *  Constructor - generates new keys.
      *
-     *  @param cipher The algorithm to use. - uses a default SecureRandom
+     *  @param cipher The algorithm to use. - uses a default, thread local SecureRandom
      */
     public OneTimeCredentials(CipherSpec cipher) {
         this(cipher, OneTimeCredentials.generator);
@@ -109,7 +109,8 @@ public class OneTimeCredentials extends JSONable {
      *  Constructor - generates new keys.
      *
      *  @param cipher the algorithm to use.
-     *  @param randomness a source of entropy to generate the keys from.
+     *  @param randomness a source of entropy to generate the keys from.  Should be safe to share
+     *      between threads without contention - a ThreadLocalSecureRandom, for example.
      */
     public OneTimeCredentials(CipherSpec cipher, Random randomness) {
         this(OneTimeCredentials.getRandom(cipher.key, randomness), OneTimeCredentials.getRandom(cipher.block, randomness), cipher);
@@ -230,7 +231,7 @@ public class OneTimeCredentials extends JSONable {
      *  @return a base64 encoded string.
      */
     public static String toBase64(byte[] bytes) {
-        return DatatypeConverter.printBase64Binary(bytes);
+        return Base64Codec.STANDARD.encode(bytes);
     }//toBase64(byte[])*/
 
     /**
@@ -241,6 +242,6 @@ public class OneTimeCredentials extends JSONable {
      *  @return the byte array represented by the input.
      */
     public static byte[] fromBase64(String base64) {
-        return DatatypeConverter.parseBase64Binary(base64);
+        return Base64Codec.STANDARD.decode(base64);
     }//fromBase64(String)*/
 }//OneTimeCredentials*/
@@ -0,0 +1,62 @@
+package info.serveros;
+
+import java.security.Key;
+import java.util.Map;
+import javax.crypto.Cipher;
+
+/**
+ *  Initialized RSA Ciphers, cached per thread and per key.  The RSA keys in use by an Encrypter are
+ *  long lived, so there's no sense in doing the provider lookup and key setup on every message.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+final class RSACipherCache {
+
+    /**
+     *  The Cipher used for key exchange.
+     */
+    public static final String RSA_CIPHER = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
+
+    /**
+     *  The most keys any one thread will keep initialized Ciphers for.
+     */
+    public static final int MAX_KEYS = 16;
+
+    /**
+     *  The initialized Ciphers, least recently used first.
+     */
+    private static final ThreadLocal<Map<KeySlot, Cipher>> ciphers = KeySlot.perThread(RSACipherCache.MAX_KEYS);
+
+    /**
+     *  Static Only.
+     */
+    private RSACipherCache() {
+    }//RSACipherCache()*/
+
+    /**
+     *  Run some data through an RSA Cipher initialized with the given key and mode.
+     *
+     *  @param mode Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+     *  @param rsaKey the key to use.
+     *  @param data the data to encrypt or decrypt.
+     *
+     *  @return the output of the Cipher.
+     *
+     *  @throws GeneralSecurityException if something goes wrong encrypting or decrypting.
+     */
+    public static byte[] doFinal(int mode, Key rsaKey, byte[] data)
+                throws java.security.GeneralSecurityException
+            {
+        Map<KeySlot, Cipher> cache = RSACipherCache.ciphers.get();
+        KeySlot s = new KeySlot(mode, rsaKey);
+        Cipher c = cache.remove(s);
+        if (c == null) {
+            c = Cipher.getInstance(RSACipherCache.RSA_CIPHER);
+            c.init(mode, rsaKey);
+        }
+        //doFinal resets the Cipher to its initialized state - unless it throws, in which case we drop it.
+        byte[] toReturn = c.doFinal(data);
+        cache.put(s, c);
+        return toReturn;
+    }//doFinal(int, Key, byte[])*/
+}//RSACipherCache*/
@@ -0,0 +1,293 @@
+package info.serveros;
+
+import info.serveros.exceptions.ReplayStoreFullException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  Remembers which presentations a Service Provider has already accepted, so a captured one can't
+ *  be replayed while its Ticket is still fresh.  Nonce pairs are hashed to a single long and kept
+ *  in open-addressed tables of primitive longs - one per span of time, with the oldest table
+ *  dropped as time moves on.  Every operation is a handful of compare-and-sets; nothing locks.
+ *
+ *  A Ticket is accepted for STALE_REQUEST_TOLERANCE either side of its timestamp, so a
+ *  presentation has to be remembered for twice that.  With spans of STALE_REQUEST_TOLERANCE and
+ *  three tables, every entry lives for at least two spans.
+ *
+ *  Capacity is fixed per span.  Once a span's table is full, presentations that weren't seen before
+ *  are refused with a ReplayStoreFullException until the next span begins - so size the store for
+ *  the peak rate of presentations times STALE_REQUEST_TOLERANCE, with headroom, or use forRate.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class ReplayStore {
+
+    /**
+     *  By default, expect up to this many presentations per span - about 1,600 a second, sustained
+     *  for the whole of a one minute span.
+     */
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    /**
+     *  How much more than the expected rate forRate allows for.
+     */
+    private static final int HEADROOM = 2;
+
+    /**
+     *  Table.add found the presentation already held.
+     */
+    private static final int PRESENT = 0;
+
+    /**
+     *  Table.add added the presentation.
+     */
+    private static final int ADDED = 1;
+
+    /**
+     *  Table.add found no room.
+     */
+    private static final int FULL = 2;
+
+    /**
+     *  The number of tables kept.
+     */
+    private static final int TABLES = 3;
+
+    /**
+     *  The empty slot marker.
+     */
+    private static final long EMPTY = 0L;
+
+    /**
+     *  The length of time each table covers, in milliseconds.
+     */
+    private final long span;
+
+    /**
+     *  The presentations each table may hold before it refuses more.
+     */
+    private final int capacity;
+
+    /**
+     *  The tables, indexed by span number modulo TABLES.
+     */
+    private final AtomicReferenceArray<Table> tables = new AtomicReferenceArray<Table>(ReplayStore.TABLES);
+
+    /**
+     *  Constructor.  Expects up to DEFAULT_CAPACITY presentations per span.
+     */
+    public ReplayStore() {
+        this(ReplayStore.DEFAULT_CAPACITY);
+    }//ReplayStore()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param capacity the most presentations to accept in any one span.  Memory use is fixed at
+     *      roughly 32 bytes per unit of capacity.
+     */
+    public ReplayStore(int capacity) {
+        this(capacity, Encrypter.STALE_REQUEST_TOLERANCE);
+    }//ReplayStore(int)*/
+
+    /**
+     *  Make a store sized for a rate of presentations, with room for bursts of twice that.
+     *
+     *  @param presentationsPerSecond the expected peak rate.
+     *
+     *  @return a new store.
+     */
+    public static ReplayStore forRate(int presentationsPerSecond) {
+        long capacity = (long) presentationsPerSecond * ReplayStore.HEADROOM * Encrypter.STALE_REQUEST_TOLERANCE / 1000;
+        return new ReplayStore((int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, capacity)));
+    }//forRate(int)*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param capacity the most presentations to accept in any one span.
+     *  @param span the length of time each table covers, in milliseconds.
+     */
+    ReplayStore(int capacity, long span) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("A ReplayStore must hold at least one presentation: " + capacity);
+        this.capacity = capacity;
+        this.span = span;
+        for (int i = 0; i < ReplayStore.TABLES; i++)
+            this.tables.set(i, new Table(Long.MIN_VALUE, 1));
+    }//ReplayStore(int, long)*/
+
+    /**
+     *  Record a presentation.
+     *
+     *  @param requesterNonce the first nonce generated by the requester - identifies the Ticket.
+     *  @param finalNonce the second nonce generated by the requester - identifies the presentation.
+     *
+     *  @return true if this is the first time the pair has been seen; false if it has been seen
+     *      before.
+     *
+     *  @throws ReplayStoreFullException if the pair hasn't been seen, but so many presentations
+     *      have arrived this span that there's no room to remember another - a replay of it
+     *      couldn't be ruled out later.
+     */
+    public boolean record(long requesterNonce, long finalNonce) throws ReplayStoreFullException {
+        return this.add(ReplayStore.key(requesterNonce, finalNonce), System.currentTimeMillis());
+    }//record(long, long)*/
+
+    /**
+     *  Record a key.  The key goes into the current table before the others are searched, so of
+     *  two threads racing with the same key - even across a change of span - at least one will
+     *  see the other.
+     *
+     *  @param key the hashed nonce pair.
+     *  @param now the current time.
+     *
+     *  @return true if the key is new.
+     *
+     *  @throws ReplayStoreFullException if the key is new, but the current table is full.
+     */
+    boolean add(long key, long now) throws ReplayStoreFullException {
+        long epoch = Math.floorDiv(now, this.span);
+        Table current = this.table(epoch);
+        int added = current.add(key);
+        if (added == ReplayStore.PRESENT)
+            return false;
+        for (int i = 0; i < ReplayStore.TABLES; i++) {
+            Table t = this.tables.get(i);
+            if (t != current && Math.abs(t.epoch - epoch) < ReplayStore.TABLES && t.contains(key))
+                return false;
+        }
+        if (added == ReplayStore.FULL)
+            throw new ReplayStoreFullException();
+        return true;
+    }//add(long, long)*/
+
+    /**
+     *  Get the table for a span, replacing the one it displaces.
+     *
+     *  @param epoch the span number.
+     *
+     *  @return the table.
+     */
+    private Table table(long epoch) {
+        int i = (int) Math.floorMod(epoch, (long) ReplayStore.TABLES);
+        Table t = this.tables.get(i);
+        while (t.epoch < epoch) {
+            Table fresh = new Table(epoch, this.capacity);
+            if (this.tables.compareAndSet(i, t, fresh))
+                return fresh;
+            t = this.tables.get(i);
+        }
+        return t;
+    }//table(long)*/
+
+    /**
+     *  Hash a nonce pair to a non-empty key.
+     *
+     *  @param requesterNonce the first nonce.
+     *  @param finalNonce the second nonce.
+     *
+     *  @return a well mixed key, never EMPTY.
+     */
+    static long key(long requesterNonce, long finalNonce) {
+        long h = finalNonce * 0x9E3779B97F4A7C15L ^ requesterNonce;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == ReplayStore.EMPTY ? 1L : h;
+    }//key(long, long)*/
+
+    /**
+     *  An open-addressed set of keys for one span.  Never more than three quarters full, so a
+     *  probe always finds an empty slot.
+     */
+    private static final class Table {
+
+        /**
+         *  The span this table covers.
+         */
+        private final long epoch;
+
+        /**
+         *  The slots.
+         */
+        private final AtomicLongArray slots;
+
+        /**
+         *  The number of slots, minus one.
+         */
+        private final int mask;
+
+        /**
+         *  The most keys to hold.
+         */
+        private final int limit;
+
+        /**
+         *  The number of keys held, or about to be.
+         */
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         *  Constructor.
+         *
+         *  @param epoch the span this table covers.
+         *  @param capacity the most keys to hold.
+         */
+        private Table(long epoch, int capacity) {
+            int length = Integer.highestOneBit(Math.max(2, capacity + capacity / 3) - 1) << 1;
+            this.epoch = epoch;
+            this.slots = new AtomicLongArray(length);
+            this.mask = length - 1;
+            this.limit = capacity;
+        }//Table(long, int)*/
+
+        /**
+         *  Add a key.
+         *
+         *  @param key the key.
+         *
+         *  @return ADDED if the key was added, PRESENT if it was already there, or FULL if it
+         *      wasn't there and there's no room for it.
+         */
+        private int add(long key) {
+            //Reserve room first, so racing threads can never fill every slot.
+            if (this.size.incrementAndGet() > this.limit) {
+                this.size.decrementAndGet();
+                return this.contains(key) ? ReplayStore.PRESENT : ReplayStore.FULL;
+            }
+            for (int i = (int) key & this.mask; ; i = (i + 1) & this.mask) {
+                long k = this.slots.get(i);
+                if (k == ReplayStore.EMPTY) {
+                    if (this.slots.compareAndSet(i, ReplayStore.EMPTY, key))
+                        return ReplayStore.ADDED;
+                    k = this.slots.get(i);
+                }
+                if (k == key) {
+                    this.size.decrementAndGet();
+                    return ReplayStore.PRESENT;
+                }
+            }
+        }//add(long)*/
+
+        /**
+         *  Look for a key.
+         *
+         *  @param key the key.
+         *
+         *  @return true if the key is there.
+         */
+        private boolean contains(long key) {
+            for (int i = (int) key & this.mask; ; i = (i + 1) & this.mask) {
+                long k = this.slots.get(i);
+                if (k == key)
+                    return true;
+                if (k == ReplayStore.EMPTY)
+                    return false;
+            }
+        }//contains(long)*/
+    }//Table*/
+}//ReplayStore*/
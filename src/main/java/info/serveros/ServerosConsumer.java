@@ -4,18 +4,25 @@ import java.security.PublicKey;
 import java.security.PrivateKey;
 import javax.json.JsonValue;
 import info.serveros.algorithms.CipherSpec;
+import info.serveros.algorithms.Encoding;
 import info.serveros.algorithms.HashSpec;
 import info.serveros.messages.*;
 import info.serveros.exceptions.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import info.serveros.metrics.Metrics;
+import info.serveros.transport.Response;
+import info.serveros.transport.Transport;
+import info.serveros.transport.UrlConnectionTransport;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
 import java.net.URLEncoder;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.json.JsonObject;
-import org.apache.commons.lang.ArrayUtils;
 
 /**
  *  A Serveros Consumer - Requests Credentials.
@@ -43,14 +50,44 @@ public class ServerosConsumer extends Encrypter {
     public final PrivateKey myPrivateKey;
 
     /**
-     *  The Hash currently dedicated for communication with the Master.
+     *  Our most preferred Cipher and Hash - used until the Master asks for something else.
      */
-    private HashSpec chosenHash;
+    private final NegotiationCache.Agreement preferred;
 
     /**
-     *  The Cipher currently dedicated for communication with the Master.
+     *  Where our agreement with the Master is kept in the NegotiationCache.
      */
-    private CipherSpec chosenCipher;
+    private final String negotiationKey;
+
+    /**
+     *  The algorithms agreed with each Master - or null, to use the shared cache.
+     */
+    private volatile NegotiationCache negotiations;
+
+    /**
+     *  The Encoding agreed with each Service Provider endpoint.  Endpoints not listed get json.
+     */
+    private final ConcurrentMap<String, Encoding> endpointEncodings = new ConcurrentHashMap<String, Encoding>();
+
+    /**
+     *  Cached Credentials - or null, to perform a full handshake on every request.
+     */
+    private volatile CredentialCache credentialCache;
+
+    /**
+     *  Handshakes in flight - shared between concurrent requests for the same Credentials.
+     */
+    private final SingleFlight flights = new SingleFlight();
+
+    /**
+     *  The transport for blocking requests - or null, to use the shared default.
+     */
+    private volatile Transport transport;
+
+    /**
+     *  The client for asynchronous requests - or null, to use the shared default.
+     */
+    private volatile HttpClient httpClient;
 
     /**
      *  Constructor.
@@ -70,8 +107,8 @@ public class ServerosConsumer extends Encrypter {
         this.masterLocation = masterLocation;
         this.masterPublicKey = masterPublicKey;
         this.myPrivateKey = myPrivateKey;
-        this.chosenHash = this.hashPrefs[0];
-        this.chosenCipher = this.cipherPrefs[0];
+        this.preferred = new NegotiationCache.Agreement(this.cipherRanking.preferred(), this.hashRanking.preferred());
+        this.negotiationKey = NegotiationCache.key(masterLocation, this.cipherRanking.toArray(), this.hashRanking.toArray());
     }//ServerosConsumer(JsonValue, String, PublicKey, PrivateKey, HashSpec[] CipherSpec[])*/
 
     /**
@@ -126,31 +163,175 @@ public class ServerosConsumer extends Encrypter {
         this(id, masterLocation, masterPublicKey, myPrivateKey, null, null);
     }//ServerosConsumer(JsonValue, String, String, string)*/
 
+    /**
+     *  Cache credentials between calls to getCredentials.
+     *
+     *  @param cache the cache to use, or null to perform a full handshake on every request.
+     *
+     *  @return this consumer.
+     */
+    public ServerosConsumer setCredentialCache(CredentialCache cache) {
+        this.credentialCache = cache;
+        return this;
+    }//setCredentialCache(CredentialCache)*/
+
+    /**
+     *  Get the credential cache.
+     *
+     *  @return the cache in use, or null if there isn't one.
+     */
+    public CredentialCache getCredentialCache() {
+        return this.credentialCache;
+    }//getCredentialCache()*/
+
+    /**
+     *  Remember negotiated algorithms in a particular cache.
+     *
+     *  @param cache the cache to use, or null to use the shared in-memory cache.
+     *
+     *  @return this consumer.
+     */
+    public ServerosConsumer setNegotiationCache(NegotiationCache cache) {
+        this.negotiations = cache;
+        return this;
+    }//setNegotiationCache(NegotiationCache)*/
+
+    /**
+     *  Get the cache of negotiated algorithms.
+     *
+     *  @return the cache set on this consumer, or the shared cache.
+     */
+    public NegotiationCache getNegotiationCache() {
+        NegotiationCache n = this.negotiations;
+        return n != null ? n : NegotiationCache.shared();
+    }//getNegotiationCache()*/
+
+    /**
+     *  Get the algorithms to use with the Master.  An agreement we can't speak - from a file
+     *  written by another version, say - is ignored.
+     *
+     *  @return the agreed Cipher and Hash, or our preferred ones if nothing usable has been agreed.
+     */
+    private NegotiationCache.Agreement agreement() {
+        NegotiationCache.Agreement a = this.getNegotiationCache().get(this.negotiationKey);
+        if (a != null && this.cipherRanking.contains(a.cipher) && this.hashRanking.contains(a.hash))
+            return a;
+        return this.preferred;
+    }//agreement()*/
+
+    /**
+     *  Settle the Cipher and Hash with the Master now, so no later request pays for a
+     *  renegotiation.  Asks the Master for credentials for a service, and throws the answer away -
+     *  so name one this consumer is authorized for, or the Master will refuse the request once the
+     *  algorithms are settled.
+     *
+     *  @param requested the ID of a service this consumer may request credentials for.
+     *
+     *  @return the agreed Cipher and Hash.
+     *
+     *  @throws UnsupportedCipherSpecException if there is no proper Cipher to speak with the
+     *      Authenticaiton Master.
+     *  @throws UnsupportedHashSpecException if there is no proper Hash to speak with the
+     *      Authenticaiton Master.
+     *  @throws java.security.GeneralSecurityException if any encryption error is encountered.
+     *  @throws VerificationException if the Signature cannot be verified.
+     *  @throws java.io.IOException if something is wrong with the machine's ability to read/write
+     *      to the network.
+     *  @throws StaleRequestException if the Response from the Authentication master is deemed to be stale.
+     *  @throws NonceMismatchException if the Response from the Authentication master does not include the correct
+     *      nonce.
+     *  @throws UnrecognizedResponseCodeException if the response from the server is deemed unactionable.
+     */
+    public NegotiationCache.Agreement negotiate(JsonValue requested)
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+                    , java.security.GeneralSecurityException
+                    , VerificationException
+                    , java.io.IOException
+                    , StaleRequestException
+                    , NonceMismatchException
+                    , UnrecognizedResponseCodeException
+            {
+        try {
+            this.makeCredentialRequest(requested);
+        } catch (ServerosException e) {
+            this.metrics.error(e);
+            throw e;
+        }
+        return this.agreement();
+    }//negotiate(JsonValue)*/
+
+    /**
+     *  Use a particular Transport for blocking requests.
+     *
+     *  @param transport the transport to use, or null to use the shared default.
+     *
+     *  @return this consumer.
+     */
+    public ServerosConsumer setTransport(Transport transport) {
+        this.transport = transport;
+        return this;
+    }//setTransport(Transport)*/
+
+    /**
+     *  Get the Transport for blocking requests.
+     *
+     *  @return the transport set on this consumer, or the shared default.
+     */
+    private Transport transport() {
+        Transport t = this.transport;
+        return t != null ? t : DefaultTransport.INSTANCE;
+    }//transport()*/
+
+    /**
+     *  Use a particular HttpClient for asynchronous requests.
+     *
+     *  @param client the client to use, or null to use the shared default.
+     *
+     *  @return this consumer.
+     */
+    public ServerosConsumer setHttpClient(HttpClient client) {
+        this.httpClient = client;
+        return this;
+    }//setHttpClient(HttpClient)*/
+
+    /**
+     *  Get the HttpClient for asynchronous requests.
+     *
+     *  @return the client set on this consumer, or the shared default.
+     */
+    private HttpClient httpClient() {
+        HttpClient client = this.httpClient;
+        return client != null ? client : DefaultHttpClient.INSTANCE;
+    }//httpClient()*/
+
     /**
      *  Create a Credential Request.
      *
      *  @param requested the JSONable ID for the target Application.
+     *  @param agreement the Cipher and Hash to use with the Master.
      *
      *  @return a credential request, ready to be encrypted and sent of.
      */
-    private CredentialRequest makeRequest(JsonValue requested) {
+    private CredentialRequest makeRequest(JsonValue requested, NegotiationCache.Agreement agreement) {
         return new CredentialRequest(
             this.id
             , requested
-            , this.chosenHash
+            , agreement.hash
             , this.hashPrefs
             , this.cipherPrefs
         );
-    }//makeRequest(JsonValue)*/
+    }//makeRequest(JsonValue, NegotiationCache.Agreement)*/
 
     /**
      *  Encrypt and Sign an Encryptable.
      *
      *  @param enc The thing to be encrypted.
+     *  @param agreement the Cipher and Hash to use with the Master.
      *
      *  @return The encrypted version of the message.
      */
-    private CryptoMessage encryptAndSign(Encryptable enc)
+    private CryptoMessage encryptAndSign(Encryptable enc, NegotiationCache.Agreement agreement)
                 throws UnsupportedCipherSpecException
                     , UnsupportedHashSpecException
                     , java.security.GeneralSecurityException
@@ -159,10 +340,10 @@ public class ServerosConsumer extends Encrypter {
             this.masterPublicKey
             , this.myPrivateKey
             , enc
-            , this.chosenCipher
-            , this.chosenHash
+            , agreement.cipher
+            , agreement.hash
         );
-    }//encryptAndSign(Encryptable)*/
+    }//encryptAndSign(Encryptable, NegotiationCache.Agreement)*/
 
     /**
      *  Select our preferred cipher from among the available.
@@ -174,14 +355,7 @@ public class ServerosConsumer extends Encrypter {
      *      it returns null.
      */
     private CipherSpec selectCipher(CipherSpec[] available) {
-        if (available == null)
-            return this.cipherPrefs.length > 0 ? this.cipherPrefs[0] : null;
-        for (CipherSpec c: this.cipherPrefs) {
-            if (ArrayUtils.contains(available, c)) {
-                return c;
-            }
-        }
-        return null;
+        return this.cipherRanking.select(available);
     }//selectCipher(CipherSpec[])*/
 
     /**
@@ -194,39 +368,120 @@ public class ServerosConsumer extends Encrypter {
      *      it returns null.
      */
     private HashSpec selectHash(HashSpec[] available) {
-        if (available == null)
-            return this.hashPrefs.length > 0 ? this.hashPrefs[0] : null;
-        for (HashSpec h: this.hashPrefs) {
-            if (ArrayUtils.contains(available, h)) {
-                return h;
-            }
-        }
-        return null;
+        return this.hashRanking.select(available);
     }//selectHash(HashSpec[])*/
 
     /**
      *  Get the response body from a serrver, regardless of error state.
      *
-     *  @param conn The connection - having already sent and begun to receive the response.
+     *  @param response The response, fully read.
      *
      *  @return The Body.
      *
      *  @throws javax.json.JsonException if the response body isn't JSON.
      */
-    private JsonObject getResponse(HttpURLConnection conn) throws java.io.IOException {
-        InputStream in = conn.getResponseCode() /100 == 2 ? conn.getInputStream() : conn.getErrorStream();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            response.append(line)
-                .append('\n')
-                ;
+    private JsonObject getResponse(Response response) {
+        return JSONable.unJSON(response.getBody());
+    }//getResponse(Response)*/
+
+    /**
+     *  Build the URL at which the Authentication Master will answer a Credential Request.
+     *
+     *  @param creq the request.
+     *  @param agreement the Cipher and Hash to use with the Master.
+     *
+     *  @return the URL, with the encrypted and signed request in the query string.
+     *
+     *  @throws UnsupportedCipherSpecException if the chosen Cipher is not supported.
+     *  @throws UnsupportedHashSpecException if the chosen Hash is not supported.
+     *  @throws java.security.GeneralSecurityException if any encryption error is encountered.
+     */
+    private String getAuthenticationURL(CredentialRequest creq, NegotiationCache.Agreement agreement)
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+                    , java.security.GeneralSecurityException
+            {
+        return new StringBuilder("http://")
+            .append(this.masterLocation)
+            .append("/authenticate?authRequest=")
+            .append(URLEncoder.encode(this.encryptAndSign(creq, agreement).toString()))
+            .toString();
+    }//getAuthenticationURL(CredentialRequest, NegotiationCache.Agreement)*/
+
+    /**
+     *  Unpack a successful response from the Authentication Master.
+     *
+     *  @param creq the request that was sent.
+     *  @param body the response body.
+     *
+     *  @return the decrypted, verified response.
+     *
+     *  @throws java.security.GeneralSecurityException if any encryption error is encountered.
+     *  @throws VerificationException if the Signature cannot be verified.
+     *  @throws StaleRequestException if the Response is deemed to be stale.
+     *  @throws NonceMismatchException if the Response does not include the correct nonce.
+     */
+    private CredentialResponse readCredentialResponse(CredentialRequest creq, JsonObject body)
+                throws java.security.GeneralSecurityException
+                    , VerificationException
+                    , StaleRequestException
+                    , NonceMismatchException
+            {
+        JsonObject obj = this.decryptAndVerify(
+            this.myPrivateKey
+            , this.masterPublicKey
+            , new CryptoMessage(body)
+        );
+        CredentialResponse resp = new CredentialResponse(obj);
+        if (resp.isStale()) throw new StaleRequestException(resp.getTimestamp());
+        if (resp.requesterNonce != creq.nonce) throw new NonceMismatchException("Requester");
+        return resp;
+    }//readCredentialResponse(CredentialRequest, JsonObject)*/
+
+    /**
+     *  Pick a new Cipher or Hash, if the Authentication Master rejected ours, and remember it for
+     *  every later request to the same Master.
+     *
+     *  @param code the response code.
+     *  @param body the response body.
+     *  @param rejected the Cipher and Hash the Master was sent.
+     *
+     *  @return true if the request should be retried.
+     *
+     *  @throws UnsupportedCipherSpecException if we share no Cipher with the Master.
+     *  @throws UnsupportedHashSpecException if we share no Hash with the Master.
+     */
+    private boolean renegotiate(int code, JsonObject body, NegotiationCache.Agreement rejected)
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+            {
+        NegotiationCache.Agreement agreed;
+        switch (code) {
+            case 409:
+                CipherSpec[] ciphers = CredentialRequest.getCiphers(body
+                    .getJsonObject("additionalInformation")
+                    .getJsonArray("supported")
+                );
+                agreed = rejected.withCipher(this.selectCipher(ciphers));
+                if (agreed.cipher == null || agreed.equals(rejected))
+                    throw new UnsupportedCipherSpecException(rejected.cipher, ciphers);
+                break;
+            case 490:
+                HashSpec[] hashes = CredentialRequest.getHashes(body
+                    .getJsonObject("additionalInformation")
+                    .getJsonArray("supported")
+                );
+                agreed = rejected.withHash(this.selectHash(hashes));
+                if (agreed.hash == null || agreed.equals(rejected))
+                    throw new UnsupportedHashSpecException(rejected.hash, hashes);
+                break;
+            default:
+                return false;
         }
-        reader.close();
-        String result = response.toString();
-        return  JSONable.unJSON(result);
-    }//getResponse(HttpUrlConnection)*/
+        this.getNegotiationCache().put(this.negotiationKey, agreed);
+        this.metrics.increment(Metrics.Counter.negotiation_retry);
+        return true;
+    }//renegotiate(int, JsonObject, NegotiationCache.Agreement)*/
 
     /**
      *  Requeste some credentials from the Authentication master.
@@ -258,57 +513,20 @@ public class ServerosConsumer extends Encrypter {
                     , NonceMismatchException
                     , UnrecognizedResponseCodeException
             {
-        CredentialRequest creq = this.makeRequest(requested);
-        HttpURLConnection conn = null;
-        StringBuilder req = new StringBuilder("http://")
-            .append(this.masterLocation)
-            .append("/authenticate?authRequest=")
-            .append(URLEncoder.encode(this.encryptAndSign(creq).toString()));
-        int code = 0;
-        JsonObject body = null;
-        try {
-            URL url = new URL(req.toString());
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setDoOutput(true);
-            code = conn.getResponseCode();
-            body = this.getResponse(conn);
-        } finally {
-            if (conn != null)
-                conn.disconnect();
-        }
-        if (code / 100 == 2) {
-            JsonObject obj = this.decryptAndVerify(
-                this.myPrivateKey
-                , this.masterPublicKey
-                , new CryptoMessage(body)
-            );
-            CredentialResponse resp = new CredentialResponse(obj);
-            if (resp.isStale()) throw new StaleRequestException(resp.getTimestamp());
-            if (resp.requesterNonce != creq.nonce) throw new NonceMismatchException("Requester");
-            return resp;
-        } else {
-            if (code == 409 || code == 490) {
-                Object[] available = null;
-                int i = 0;
-                switch (code) {
-                    case 409:
-                        this.chosenCipher = this.selectCipher(CredentialRequest.getCiphers(body
-                            .getJsonObject("additionalInformation")
-                            .getJsonArray("supported")
-                        ));
-                        break;
-                    case 490:
-                        this.chosenHash =  this.selectHash(CredentialRequest.getHashes(body
-                            .getJsonObject("additionalInformation")
-                            .getJsonArray("supported")
-                        ));
-                        break;
-                }
-                return this.makeCredentialRequest(requested);
-            }
-            throw new UnrecognizedResponseCodeException(code);
-        }
+        NegotiationCache.Agreement agreement = this.agreement();
+        CredentialRequest creq = this.makeRequest(requested, agreement);
+        String url = this.getAuthenticationURL(creq, agreement);
+        Metrics m = this.metrics;
+        long start = m.start();
+        Response response = this.transport().get(url);
+        m.stop(Metrics.Timer.http_round_trip, start);
+        int code = response.status;
+        JsonObject body = this.getResponse(response);
+        if (code / 100 == 2)
+            return this.readCredentialResponse(creq, body);
+        if (this.renegotiate(code, body, agreement))
+            return this.makeCredentialRequest(requested);
+        throw new UnrecognizedResponseCodeException(code);
     }//makeCredentialRequest(JsonValue)*/
 
     /**
@@ -324,11 +542,91 @@ public class ServerosConsumer extends Encrypter {
             , resp.serverNonce
             , resp.requesterNonce
             , OneTimeCredentials.toBase64(OneTimeCredentials.getRandom(resp.credentials.cipher.block))
+            , this.advertisedEncodings()
         );
     }//getTicketId(CredentialResponse)*/
 
     /**
-     *  Get some working Credentials for a service.
+     *  Build the TicketPresentation for a Service Provider.
+     *
+     *  @param resp The credential Response from the Authenticaiton Master.
+     *  @param id the TicketId to present.
+     *  @param endpoint the Service Provider endpoint it will be presented to.
+     *
+     *  @return the presentation, ready to send.
+     *
+     *  @throws java.security.GeneralSecurityException if any encryption error is encountered.
+     */
+    private TicketPresentation getPresentation(CredentialResponse resp, TicketId id, String endpoint)
+                throws java.security.GeneralSecurityException
+            {
+        return new TicketPresentation(this.encipher(id, resp.credentials, this.encoding(endpoint)), resp.ticket);
+    }//getPresentation(CredentialResponse, TicketId, String)*/
+
+    /**
+     *  Get the Encoding agreed with a Service Provider.
+     *
+     *  @param endpoint the Service Provider endpoint.
+     *
+     *  @return the Encoding it last said it could read, or json.
+     */
+    private Encoding encoding(String endpoint) {
+        Encoding e = this.endpointEncodings.get(endpoint);
+        return e != null ? e : Encoding.json;
+    }//encoding(String)*/
+
+    /**
+     *  Forget the Encoding agreed with a Service Provider, if it rejected a presentation.  A
+     *  Provider that was downgraded may no longer read what it once did.
+     *
+     *  @param endpoint the Service Provider endpoint.
+     */
+    private void rejected(String endpoint) {
+        this.endpointEncodings.remove(endpoint);
+    }//rejected(String)*/
+
+    /**
+     *  Unpack a successful response from the Service Provider.
+     *
+     *  @param resp The credential Response from the Authenticaiton Master.
+     *  @param id the TicketId that was presented.
+     *  @param body the response body.
+     *  @param endpoint the Service Provider endpoint that sent it.
+     *
+     *  @return the Credentials, now registered at the Service Provider.
+     *
+     *  @throws java.security.GeneralSecurityException if any encryption error is encountered.
+     *  @throws StaleRequestException if the Response is deemed to be stale.
+     *  @throws NonceMismatchException if the Response does not include the correct nonces.
+     */
+    private Credentials readAck(CredentialResponse resp, TicketId id, JsonObject body, String endpoint)
+                throws java.security.GeneralSecurityException
+                    , StaleRequestException
+                    , NonceMismatchException
+            {
+        TicketAck ack = new TicketAck(this.decipher(body.getString("message"), new OneTimeCredentials(
+            resp.credentials.getKeyString()
+            , id.iv
+            , resp.credentials.cipher
+        )));
+        if (resp.isStale()) throw new StaleRequestException(resp.getTimestamp());
+        if (ack.requesterNonce != id.requesterNonce) throw new NonceMismatchException("Requester");
+        if (ack.serverNonce != id.serverNonce) throw new NonceMismatchException("Server");
+        if (ack.finalNonce != id.finalNonce) throw new NonceMismatchException("Final");
+        this.endpointEncodings.put(endpoint, this.selectEncoding(ack.getEncodings()));
+        return new Credentials(
+            resp.requested
+            , resp.id
+            , resp.secret
+            , resp.hash
+            , resp.getExpiration()
+        );
+    }//readAck(CredentialResponse, TicketId, JsonObject, String)*/
+
+    /**
+     *  Get some working Credentials for a service.  If a CredentialCache is set, unexpired
+     *  credentials are returned from it.  Concurrent callers asking for the same credentials share
+     *  a single handshake.
      *
      *  @param requested the ID of the service.
      *  @param endpoint the Service Provider endpoint at which credentials should be registerd.
@@ -348,7 +646,7 @@ public class ServerosConsumer extends Encrypter {
      *      does not include the correct nonce.
      *  @throws UnrecognizedResponseCodeException if the response from the server is deemed unactionable.
      */
-    public Credentials getCredentials(JsonValue requested, String endpoint)
+    public Credentials getCredentials(final JsonValue requested, final String endpoint)
                 throws UnsupportedCipherSpecException
                     , UnsupportedHashSpecException
                     , java.security.GeneralSecurityException
@@ -358,46 +656,213 @@ public class ServerosConsumer extends Encrypter {
                     , NonceMismatchException
                     , UnrecognizedResponseCodeException
             {
-        CredentialResponse resp = this.makeCredentialRequest(requested);
-        TicketId id = this.getTicketId(resp);
-        String enciphered = this.encipher(id, resp.credentials);
-        TicketPresentation p = new TicketPresentation(enciphered, resp.ticket);
-        HttpURLConnection conn = null;
-        JsonObject body = null;
-        int code = 0;
+        CredentialCache.Source source = this.flights.wrap(requested, endpoint, new CredentialCache.Source() {
+            @Override
+            public Credentials fetch()
+                        throws UnsupportedCipherSpecException
+                            , UnsupportedHashSpecException
+                            , java.security.GeneralSecurityException
+                            , VerificationException
+                            , java.io.IOException
+                            , StaleRequestException
+                            , NonceMismatchException
+                            , UnrecognizedResponseCodeException
+                    {
+                return ServerosConsumer.this.fetchCredentials(requested, endpoint);
+            }//fetch()*/
+        });
+        CredentialCache cache = this.credentialCache;
+        if (cache == null)
+            return source.fetch();
+        return cache.get(requested, endpoint, source);
+    }//getCredentials(JsonValue, String)*/
+
+    /**
+     *  Perform a full handshake to get some working Credentials for a service.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials should be registerd.
+     *
+     *  @return some credententials, registered at the service provider.
+     *
+     *  @throws UnsupportedCipherSpecException if there is no proper Cipher to speak with the
+     *      Authenticaiton Master.
+     *  @throws UnsupportedHashSpecException if there is no proper Hash to speak with the
+     *      Authenticaiton Master.
+     *  @throws java.security.GeneralSecurityException if any encryption error is encountered.
+     *  @throws VerificationException if the Signature cannot be verified.
+     *  @throws java.io.IOException if something is wrong with the machine's ability to read/write
+     *      to the network.
+     *  @throws StaleRequestException if the Response from the Authentication master  or Service Provider is deemed to be stale.
+     *  @throws NonceMismatchException if the Response from the Authentication master  or Service Provider
+     *      does not include the correct nonce.
+     *  @throws UnrecognizedResponseCodeException if the response from the server is deemed unactionable.
+     */
+    private Credentials fetchCredentials(JsonValue requested, String endpoint)
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+                    , java.security.GeneralSecurityException
+                    , VerificationException
+                    , java.io.IOException
+                    , StaleRequestException
+                    , NonceMismatchException
+                    , UnrecognizedResponseCodeException
+            {
+        try {
+            CredentialResponse resp = this.makeCredentialRequest(requested);
+            TicketId id = this.getTicketId(resp);
+            byte[] body = this.getPresentation(resp, id, endpoint).toJSONBytes();
+            Metrics m = this.metrics;
+            long start = m.start();
+            Response response = this.transport().post(endpoint, "application/json", body);
+            m.stop(Metrics.Timer.http_round_trip, start);
+            int code = response.status;
+            if (code / 100 == 2)
+                return this.readAck(resp, id, this.getResponse(response), endpoint);
+            this.rejected(endpoint);
+            throw new UnrecognizedResponseCodeException(code);
+        } catch (ServerosException e) {
+            this.metrics.error(e);
+            throw e;
+        }
+    }//fetchCredentials(JsonValue, String)*/
+
+    /**
+     *  Get some working Credentials for a service, without blocking.  The request to the
+     *  Authentication Master and the presentation to the Service Provider are chained on the
+     *  HttpClient's asynchronous API, so no thread waits on the network.  Like
+     *  getCredentials(JsonValue, String), unexpired credentials come from the CredentialCache if one
+     *  is set, and concurrent callers asking for the same credentials share a single handshake.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials should be registerd.
+     *
+     *  @return a future for credententials, registered at the service provider.  It fails with
+     *      any of the exceptions getCredentials(JsonValue, String) would throw.
+     */
+    public CompletableFuture<Credentials> getCredentialsAsync(final JsonValue requested, final String endpoint) {
+        CredentialCache.AsyncSource source = this.flights.wrapAsync(requested, endpoint
+            , () -> this.fetchCredentialsAsync(requested, endpoint)
+        );
+        CredentialCache cache = this.credentialCache;
+        if (cache == null)
+            return source.fetchAsync();
+        return cache.getAsync(requested, endpoint, source);
+    }//getCredentialsAsync(JsonValue, String)*/
+
+    /**
+     *  Perform a full handshake to get some working Credentials for a service, without blocking.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials should be registerd.
+     *
+     *  @return a future for credententials, registered at the service provider.
+     */
+    private CompletableFuture<Credentials> fetchCredentialsAsync(JsonValue requested, String endpoint) {
+        return this.makeCredentialRequestAsync(requested)
+            .thenCompose(resp -> this.presentAsync(resp, endpoint))
+            .whenComplete((credentials, failure) -> {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                if (cause instanceof ServerosException)
+                    this.metrics.error((ServerosException) cause);
+            });
+    }//fetchCredentialsAsync(JsonValue, String)*/
+
+    /**
+     *  Request some credentials from the Authentication master, without blocking.
+     *
+     *  @param requested The application we need credentials for.
+     *
+     *  @return a future for the response from the authentication master.
+     */
+    private CompletableFuture<CredentialResponse> makeCredentialRequestAsync(JsonValue requested) {
+        NegotiationCache.Agreement agreement = this.agreement();
+        CredentialRequest creq = this.makeRequest(requested, agreement);
+        HttpRequest request;
         try {
-            URL url = new URL(endpoint);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Type", "application/json");
-            OutputStream o = conn.getOutputStream();
-            p.toJSON(o);
-            o.close();
-            code = conn.getResponseCode();
-            body = this.getResponse(conn);
-        } finally {
-            if (conn != null)
-                conn.disconnect();
+            request = HttpRequest.newBuilder(URI.create(this.getAuthenticationURL(creq, agreement)))
+                .GET()
+                .build();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
         }
-        if (code / 100 == 2) {
-            TicketAck ack = new TicketAck(this.decipher(body.getString("message"), new OneTimeCredentials(
-                resp.credentials.getKeyString()
-                , id.iv
-                , resp.credentials.cipher
-            )));
-            if (resp.isStale()) throw new StaleRequestException(resp.getTimestamp());
-            if (ack.requesterNonce != id.requesterNonce) throw new NonceMismatchException("Requester");
-            if (ack.serverNonce != id.serverNonce) throw new NonceMismatchException("Server");
-            if (ack.finalNonce != id.finalNonce) throw new NonceMismatchException("Final");
-            return new Credentials(
-                resp.requested
-                , resp.id
-                , resp.secret
-                , resp.hash
-                , resp.getExpiration()
-            );
+        Metrics m = this.metrics;
+        long start = m.start();
+        return this.httpClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenCompose(response -> {
+                m.stop(Metrics.Timer.http_round_trip, start);
+                try {
+                    int code = response.statusCode();
+                    JsonObject body = JSONable.unJSON(new ByteArrayInputStream(response.body()));
+                    if (code / 100 == 2)
+                        return CompletableFuture.completedFuture(this.readCredentialResponse(creq, body));
+                    if (this.renegotiate(code, body, agreement))
+                        return this.makeCredentialRequestAsync(requested);
+                    throw new UnrecognizedResponseCodeException(code);
+                } catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            });
+    }//makeCredentialRequestAsync(JsonValue)*/
+
+    /**
+     *  Present a ticket to the Service Provider, without blocking.
+     *
+     *  @param resp The credential Response from the Authenticaiton Master.
+     *  @param endpoint the Service Provider endpoint at which credentials should be registerd.
+     *
+     *  @return a future for the credentials, registered at the service provider.
+     */
+    private CompletableFuture<Credentials> presentAsync(CredentialResponse resp, String endpoint) {
+        TicketId id = this.getTicketId(resp);
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(endpoint))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(this.getPresentation(resp, id, endpoint).toJSONBytes()))
+                .build();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
         }
-        throw new UnrecognizedResponseCodeException(code);
-    }//getCredentials(JsonValue, String)*/
+        Metrics m = this.metrics;
+        long start = m.start();
+        return this.httpClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenCompose(response -> {
+                m.stop(Metrics.Timer.http_round_trip, start);
+                try {
+                    int code = response.statusCode();
+                    if (code / 100 == 2)
+                        return CompletableFuture.completedFuture(this.readAck(resp, id, JSONable.unJSON(new ByteArrayInputStream(response.body())), endpoint));
+                    this.rejected(endpoint);
+                    throw new UnrecognizedResponseCodeException(code);
+                } catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            });
+    }//presentAsync(CredentialResponse, String)*/
+
+    /**
+     *  Holds the shared Transport - built the first time anyone makes a blocking request.
+     */
+    private static final class DefaultTransport {
+
+        /**
+         *  The shared transport.  HttpURLConnection, so the JDK's proxy settings and redirects
+         *  still apply; a PooledHttpTransport can be set instead where neither is needed.
+         */
+        private static final Transport INSTANCE = new UrlConnectionTransport();
+    }//DefaultTransport*/
+
+    /**
+     *  Holds the shared HttpClient - built the first time anyone makes an asynchronous request.
+     */
+    private static final class DefaultHttpClient {
+
+        /**
+         *  The shared client.  HTTP/1.1, since that's what a Serveros Master speaks.
+         */
+        private static final HttpClient INSTANCE = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    }//DefaultHttpClient*/
 }//ServerosConsumer*/
@@ -0,0 +1,277 @@
+package info.serveros;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import info.serveros.algorithms.*;
+import info.serveros.exceptions.*;
+import info.serveros.messages.CredentialRequest;
+import info.serveros.messages.CredentialResponse;
+import info.serveros.messages.Encryptable;
+import info.serveros.messages.Ticket;
+
+/**
+ *  A minimal Authentication Master, so the whole handshake can be run on one machine - for
+ *  examples, load tests and latency measurements.  Applications are registered in memory with
+ *  their public keys.  A CredentialRequest is decrypted and verified, and answered with fresh
+ *  Credentials and a Ticket for the requested Provider; a request sealed with a Cipher or signed
+ *  with a Hash this Master doesn't support gets the 409 or 490 a real Master would send, so
+ *  consumers renegotiate just as they would in production.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class ServerosMaster extends Encrypter {
+
+    /**
+     *  By default, issued Credentials last this long, in milliseconds.
+     */
+    public static final long DEFAULT_TICKET_LIFETIME = 60 * 60 * 1000;
+
+    /**
+     *  My Private Key.
+     */
+    public final PrivateKey myPrivateKey;
+
+    /**
+     *  The registered applications, by id.
+     */
+    private final ConcurrentMap<JsonValue, Application> applications = new ConcurrentHashMap<JsonValue, Application>();
+
+    /**
+     *  How long issued Credentials last, in milliseconds.
+     */
+    private volatile long ticketLifetime = ServerosMaster.DEFAULT_TICKET_LIFETIME;
+
+    /**
+     *  Constructor.
+     *
+     *  @param myPrivateKey the private key of this Master.
+     *  @param hashPrefs supported Hashes in order of preference.
+     *  @param cipherPrefs supported Ciphers, in order of preference.
+     */
+    public ServerosMaster(PrivateKey myPrivateKey, HashSpec[] hashPrefs, CipherSpec[] cipherPrefs) {
+        super(cipherPrefs, hashPrefs);
+        this.myPrivateKey = myPrivateKey;
+    }//ServerosMaster(PrivateKey, HashSpec[], CipherSpec[])*/
+
+    /**
+     *  Constructor.  Supports every available Cipher and Hash.
+     *
+     *  @param myPrivateKey the private key of this Master.
+     */
+    public ServerosMaster(PrivateKey myPrivateKey) {
+        this(myPrivateKey, null, null);
+    }//ServerosMaster(PrivateKey)*/
+
+    /**
+     *  Register an application, as a consumer, a provider or both.
+     *
+     *  @param id the application's id.
+     *  @param publicKey the application's public key.
+     *  @param authData what to tell Providers about the application when it asks for Credentials.
+     *
+     *  @return this Master.
+     */
+    public ServerosMaster addApplication(JsonValue id, PublicKey publicKey, JsonValue authData) {
+        this.applications.put(id, new Application(publicKey, authData == null ? JsonValue.NULL : authData));
+        return this;
+    }//addApplication(JsonValue, PublicKey, JsonValue)*/
+
+    /**
+     *  Register an application, as a consumer, a provider or both.
+     *
+     *  @param id the application's id.
+     *  @param publicKey the application's public key.
+     *
+     *  @return this Master.
+     */
+    public ServerosMaster addApplication(JsonValue id, PublicKey publicKey) {
+        return this.addApplication(id, publicKey, null);
+    }//addApplication(JsonValue, PublicKey)*/
+
+    /**
+     *  Forget an application.
+     *
+     *  @param id the application's id.
+     *
+     *  @return this Master.
+     */
+    public ServerosMaster removeApplication(JsonValue id) {
+        this.applications.remove(id);
+        return this;
+    }//removeApplication(JsonValue)*/
+
+    /**
+     *  Set how long issued Credentials last.
+     *
+     *  @param millis the lifetime, in milliseconds.
+     *
+     *  @return this Master.
+     */
+    public ServerosMaster setTicketLifetime(long millis) {
+        this.ticketLifetime = millis;
+        return this;
+    }//setTicketLifetime(long)*/
+
+    /**
+     *  Get how long issued Credentials last.
+     *
+     *  @return the lifetime, in milliseconds.
+     */
+    public long getTicketLifetime() {
+        return this.ticketLifetime;
+    }//getTicketLifetime()*/
+
+    /**
+     *  Answer a CredentialRequest.
+     *
+     *  @param authRequest the encrypted, signed request, as a consumer sends it.
+     *
+     *  @return the encrypted, signed CredentialResponse.
+     *
+     *  @throws UnsupportedCipherSpecException if the request was sealed with an unsupported Cipher,
+     *      or the consumer shares no Cipher with this Master.
+     *  @throws UnsupportedHashSpecException if the request was signed with an unsupported Hash,
+     *      or the consumer shares no Hash with this Master.
+     *  @throws VerificationException If the signature is messy.
+     *  @throws StaleRequestException If the request is stale.
+     *  @throws ServerosException if either application is unknown, or the request is malformed.
+     *  @throws GeneralSecurityException if something goes wrong with Decryption.
+     */
+    public CryptoMessage authenticate(String authRequest)
+                throws java.security.GeneralSecurityException
+                    , ServerosException
+            {
+        CryptoMessage request;
+        try {
+            request = new CryptoMessage(authRequest);
+        } catch (RuntimeException e) {
+            ServerosException malformed = new ServerosException("Malformed authRequest.", 400, e);
+            this.metrics.error(malformed);
+            throw malformed;
+        }
+        return this.authenticate(request);
+    }//authenticate(String)*/
+
+    /**
+     *  Answer a CredentialRequest.
+     *
+     *  @param request the encrypted, signed request.
+     *
+     *  @return the encrypted, signed CredentialResponse.
+     *
+     *  @throws UnsupportedCipherSpecException if the request was sealed with an unsupported Cipher,
+     *      or the consumer shares no Cipher with this Master.
+     *  @throws UnsupportedHashSpecException if the request was signed with an unsupported Hash,
+     *      or the consumer shares no Hash with this Master.
+     *  @throws VerificationException If the signature is messy.
+     *  @throws StaleRequestException If the request is stale.
+     *  @throws ServerosException if either application is unknown, or the request is malformed.
+     *  @throws GeneralSecurityException if something goes wrong with Decryption.
+     */
+    public CryptoMessage authenticate(CryptoMessage request)
+                throws java.security.GeneralSecurityException
+                    , ServerosException
+            {
+        try {
+            return this.issue(request);
+        } catch (ServerosException e) {
+            this.metrics.error(e);
+            throw e;
+        }
+    }//authenticate(CryptoMessage)*/
+
+    /**
+     *  Issue Credentials in answer to a CredentialRequest.
+     *
+     *  @param request the encrypted, signed request.
+     *
+     *  @return the encrypted, signed CredentialResponse.
+     *
+     *  @throws ServerosException if the request can't be answered - see authenticate.
+     *  @throws GeneralSecurityException if something goes wrong with Decryption.
+     */
+    private CryptoMessage issue(CryptoMessage request)
+                throws java.security.GeneralSecurityException
+                    , ServerosException
+            {
+        Envelope envelope = Envelope.parse(request.message);
+        OneTimeCredentials sealedWith = this.unwrap(this.myPrivateKey, envelope);
+        if (!this.cipherRanking.contains(sealedWith.cipher))
+            throw new UnsupportedCipherSpecException(sealedWith.cipher, this.cipherRanking.toArray());
+        CredentialRequest creq;
+        try {
+            creq = new CredentialRequest(this.decrypt(envelope, sealedWith));
+        } catch (RuntimeException e) {
+            throw new ServerosException("Malformed CredentialRequest.", 400, e);
+        }
+        if (!this.hashRanking.contains(creq.hash))
+            throw new UnsupportedHashSpecException(creq.hash, this.hashRanking.toArray());
+
+        Application requester = this.applications.get(creq.requester);
+        if (requester == null)
+            throw new ServerosException("Unknown requester.", 401);
+        if (!this.verify(requester.publicKey, envelope.getBytes(), creq.hash
+                , OneTimeCredentials.fromBase64(request.signature)))
+            throw new VerificationException();
+        if (creq.isStale()) throw new StaleRequestException(creq.getTimestamp());
+        Application requested = this.applications.get(creq.requested);
+        if (requested == null)
+            throw new ServerosException("Unknown application requested.", 404);
+
+        CipherSpec cipher = this.cipherRanking.select(creq.getSupportedCiphers());
+        if (cipher == null)
+            throw new UnsupportedCipherSpecException(null, this.cipherRanking.toArray());
+        HashSpec hash = this.hashRanking.select(creq.getSupportedHashes());
+        if (hash == null)
+            throw new UnsupportedHashSpecException(null, this.hashRanking.toArray());
+
+        long serverNonce = Encryptable.generateNonce();
+        String id = OneTimeCredentials.toBase64(OneTimeCredentials.getRandom(128));
+        String secret = OneTimeCredentials.toBase64(OneTimeCredentials.getRandom(256));
+        OneTimeCredentials credentials = this.getOneTimeCredentials(cipher);
+        Date expires = new Date(System.currentTimeMillis() + this.ticketLifetime);
+
+        Ticket ticket = new Ticket(creq.requester, creq.requested, serverNonce, creq.nonce
+            , id, secret, credentials, hash, expires, requester.authData
+        );
+        CryptoMessage sealedTicket = this.encryptAndSign(requested.publicKey, this.myPrivateKey, ticket
+            , this.cipherRanking.preferred(), hash
+        );
+        CredentialResponse response = new CredentialResponse(creq.requester, creq.requested, serverNonce, creq.nonce
+            , id, secret, credentials, hash, expires, sealedTicket
+        );
+        return this.encryptAndSign(requester.publicKey, this.myPrivateKey, response, sealedWith.cipher, hash);
+    }//issue(CryptoMessage)*/
+
+    /**
+     *  A registered application.
+     */
+    private static final class Application {
+
+        /**
+         *  The application's public key.
+         */
+        private final PublicKey publicKey;
+
+        /**
+         *  What to tell Providers about the application.
+         */
+        private final JsonValue authData;
+
+        /**
+         *  Constructor.
+         *
+         *  @param publicKey the application's public key.
+         *  @param authData what to tell Providers about the application.
+         */
+        private Application(PublicKey publicKey, JsonValue authData) {
+            this.publicKey = publicKey;
+            this.authData = authData;
+        }//Application(PublicKey, JsonValue)*/
+    }//Application*/
+}//ServerosMaster*/
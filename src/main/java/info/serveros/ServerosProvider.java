@@ -2,6 +2,14 @@ package info.serveros;
 
 import java.security.PublicKey;
 import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
 import javax.json.JsonValue;
 import info.serveros.algorithms.*;
 import info.serveros.messages.TicketAck;
@@ -32,6 +40,21 @@ public class ServerosProvider extends Encrypter {
      */
     public final PrivateKey myPrivateKey;
 
+    /**
+     *  Verified Tickets - or null, to decrypt and verify every presentation.
+     */
+    private volatile TicketCache ticketCache;
+
+    /**
+     *  Presentations already acknowledged - or null, to rely on staleness alone.
+     */
+    private volatile ReplayStore replayStore;
+
+    /**
+     *  Where batches of presentations are decrypted and verified.
+     */
+    private volatile ForkJoinPool batchPool = ForkJoinPool.commonPool();
+
     /**
      *  Constructor.
      *
@@ -50,6 +73,69 @@ public class ServerosProvider extends Encrypter {
         this.myPrivateKey = myPrivateKey;
     }//ServerosProvider(JsonValue, PublicKey, PrivateKey, HashSpec[], CipherSpec[])*/
 
+    /**
+     *  Cache verified Tickets between presentations.
+     *
+     *  @param cache the cache to use, or null to decrypt and verify every presentation.
+     *
+     *  @return this provider.
+     */
+    public ServerosProvider setTicketCache(TicketCache cache) {
+        this.ticketCache = cache;
+        return this;
+    }//setTicketCache(TicketCache)*/
+
+    /**
+     *  Get the Ticket cache.
+     *
+     *  @return the cache in use, or null if there isn't one.
+     */
+    public TicketCache getTicketCache() {
+        return this.ticketCache;
+    }//getTicketCache()*/
+
+    /**
+     *  Refuse to acknowledge the same presentation twice.
+     *
+     *  @param store where to remember presentations, or null to rely on staleness alone.
+     *
+     *  @return this provider.
+     */
+    public ServerosProvider setReplayStore(ReplayStore store) {
+        this.replayStore = store;
+        return this;
+    }//setReplayStore(ReplayStore)*/
+
+    /**
+     *  Get the replay store.
+     *
+     *  @return the store in use, or null if there isn't one.
+     */
+    public ReplayStore getReplayStore() {
+        return this.replayStore;
+    }//getReplayStore()*/
+
+    /**
+     *  Set the pool batches of presentations are decrypted and verified on.
+     *
+     *  @param pool the pool to use, or null for the common pool.
+     *
+     *  @return this provider.
+     */
+    public ServerosProvider setBatchPool(ForkJoinPool pool) {
+        this.batchPool = pool == null ? ForkJoinPool.commonPool() : pool;
+        return this;
+    }//setBatchPool(ForkJoinPool)*/
+
+    /**
+     *  Get the pool batches of presentations are decrypted and verified on.
+     *
+     *  @return the pool in use.
+     */
+    public ForkJoinPool getBatchPool() {
+        return this.batchPool;
+    }//getBatchPool()*/
+
     /**
      *  Validate the Ticket/Id.
      *
@@ -59,12 +145,32 @@ public class ServerosProvider extends Encrypter {
      *  @throws NonceMismatchException If one of the nonces does not match.
      *  @throws StaleRequestException If the Ticket is stale.
      */
-    private void validate(Ticket ticket, TicketId id ) throws NonceMismatchException, StaleRequestException {
+    private void validate(Ticket ticket, TicketId id)
+                throws NonceMismatchException
+                    , StaleRequestException
+            {
         if (ticket.isStale()) throw new StaleRequestException(ticket.getTimestamp());
         if (ticket.requesterNonce != id.requesterNonce) throw new NonceMismatchException("Requester");
         if (ticket.serverNonce != id.serverNonce) throw new NonceMismatchException("Server");
     }//validate(Ticket, TicketId)*/
 
+    /**
+     *  Record a presentation, and refuse it if it's been seen before.
+     *
+     *  @param id The ID sent from the requester.
+     *
+     *  @throws ReplayException If the presentation has already been acknowledged.
+     *  @throws ReplayStoreFullException If the presentation can't be recorded, to be checked later.
+     */
+    private void record(TicketId id)
+                throws ReplayException
+                    , ReplayStoreFullException
+            {
+        ReplayStore store = this.replayStore;
+        if (store != null && !store.record(id.requesterNonce, id.finalNonce))
+            throw new ReplayException();
+    }//record(TicketId)*/
+
     /**
      *  Get the ticket out of the TicketPresentation.
      *
@@ -75,13 +181,41 @@ public class ServerosProvider extends Encrypter {
      *  @throws GeneralSecurityException if something goes wrong with Decryption.
      *  @throws VerificationException If the signature is messy.
      */
-    private Ticket getTicket(TicketPresentation p)
+    private Ticket getTicket(final TicketPresentation p)
                 throws java.security.GeneralSecurityException
                     , VerificationException
             {
-        return new Ticket(this.decryptAndVerify(this.myPrivateKey, this.masterPublicKey, p.ticket));
+        TicketCache cache = this.ticketCache;
+        if (cache == null)
+            return this.verifyTicket(p);
+        return cache.get(p.ticket, new TicketCache.Source() {
+            @Override
+            public Ticket verify()
+                        throws java.security.GeneralSecurityException
+                            , VerificationException
+                    {
+                return ServerosProvider.this.verifyTicket(p);
+            }//verify()*/
+        });
     }//getTicket(TicketPresentation)*/
 
+    /**
+     *  Decrypt and verify the ticket in a TicketPresentation.
+     *
+     *  @param p The TicketPresentation Message from the Requester.
+     *
+     *  @return the ticket sent by the Authentication Master.
+     *
+     *  @throws GeneralSecurityException if something goes wrong with Decryption.
+     *  @throws VerificationException If the signature is messy.
+     */
+    private Ticket verifyTicket(TicketPresentation p)
+                throws java.security.GeneralSecurityException
+                    , VerificationException
+            {
+        return new Ticket(this.decryptAndVerify(this.myPrivateKey, this.masterPublicKey, p.ticket));
+    }//verifyTicket(TicketPresentation)*/
+
     /**
      *  Get a TicketId out of the TicketPresentation.
      *
@@ -94,6 +228,52 @@ public class ServerosProvider extends Encrypter {
         return new TicketId(this.decipher(p.id, ticket.oneTimeCredentials));
     }//getId(TicketPresentation, Ticket)*/
 
+    /**
+     *  Acknowledge a TicketPresentation, and extract its Credentials, in a single pass - so the
+     *  Ticket is only decrypted and verified once.  Register the Credentials before sending the
+     *  acknowledgement: the consumer takes the ack to mean they're ready to use.
+     *
+     *  @param p the presented ticket information.
+     *
+     *  @return the acknowledgement, ready to return to the consumer, and the Credentials.
+     *
+     *  @throws NonceMismatchException If one of the nonces does not match.
+     *  @throws StaleRequestException If the Ticket is stale.
+     *  @throws ReplayException If the presentation has already been acknowledged.
+     *  @throws ReplayStoreFullException If too many presentations have arrived to rule out a replay.
+     *  @throws GeneralSecurityException if something goes wrong with Decryption.
+     *  @throws VerificationException If the signature is messy.
+     */
+    public Acknowledgement acknowledge(TicketPresentation p)
+                throws java.security.GeneralSecurityException
+                    , MessageException
+                    , ReplayStoreFullException
+            {
+        try {
+            Ticket ticket = this.getTicket(p);
+            TicketId id = this.getId(p, ticket);
+
+            this.validate(ticket, id);
+            this.record(id);
+            TicketAck ack = new TicketAck(
+                ticket.serverNonce
+                , ticket.requesterNonce
+                , id.finalNonce
+                , this.advertisedEncodings()
+            );
+
+            return new Acknowledgement(new EncipheredAck(this.encipher(ack, new OneTimeCredentials(
+                ticket.oneTimeCredentials.getKeyString()
+                , id.iv
+                , ticket.oneTimeCredentials.cipher
+                , ticket.oneTimeCredentials.hash
+            ), this.selectEncoding(id.getEncodings()))), this.getCredentials(ticket));
+        } catch (ServerosException e) {
+            this.metrics.error(e);
+            throw e;
+        }
+    }//acknowledge(TicketPresentation)*/
+
     /**
      *  Get an Ack response to the TicketPresentation.
      *
@@ -103,29 +283,17 @@ public class ServerosProvider extends Encrypter {
      *
      *  @throws NonceMismatchException If one of the nonces does not match.
      *  @throws StaleRequestException If the Ticket is stale.
+     *  @throws ReplayException If the presentation has already been acknowledged.
+     *  @throws ReplayStoreFullException If too many presentations have arrived to rule out a replay.
      *  @throws GeneralSecurityException if something goes wrong with Decryption.
      *  @throws VerificationException If the signature is messy.
      */
     public EncipheredAck getEncipheredAck(TicketPresentation p)
                 throws java.security.GeneralSecurityException
                     , MessageException
+                    , ReplayStoreFullException
             {
-        Ticket ticket = this.getTicket(p);
-        TicketId id = this.getId(p, ticket);
-
-        this.validate(ticket, id);
-        TicketAck ack = new TicketAck(
-            ticket.requesterNonce
-            , ticket.serverNonce
-            , id.finalNonce
-        );
-
-        return new EncipheredAck(this.encipher(ack, new OneTimeCredentials(
-            ticket.oneTimeCredentials.getKeyString()
-            , id.iv
-            , ticket.oneTimeCredentials.cipher
-            , ticket.oneTimeCredentials.hash
-        )));
+        return this.acknowledge(p).getAck();
     }//getEncipheredAck(TicketPresentation p)*/
 
     /**
@@ -139,12 +307,15 @@ public class ServerosProvider extends Encrypter {
      *
      *  @throws NonceMismatchException If one of the nonces does not match.
      *  @throws StaleRequestException If the Ticket is stale.
+     *  @throws ReplayException If the presentation has already been acknowledged.
+     *  @throws ReplayStoreFullException If too many presentations have arrived to rule out a replay.
      *  @throws GeneralSecurityException if something goes wrong with Decryption.
      *  @throws VerificationException If the signature is messy.
      */
     public EncipheredAck getEncipheredAck(String id, String message, String signature)
                 throws java.security.GeneralSecurityException
                     , MessageException
+                    , ReplayStoreFullException
             {
         return this.getEncipheredAck(new TicketPresentation(id, new CryptoMessage(message, signature, null)));
     }//getEncipheredAck(String, String, String)*/
@@ -158,12 +329,15 @@ public class ServerosProvider extends Encrypter {
      *
      *  @throws NonceMismatchException If one of the nonces does not match.
      *  @throws StaleRequestException If the Ticket is stale.
+     *  @throws ReplayException If the presentation has already been acknowledged.
+     *  @throws ReplayStoreFullException If too many presentations have arrived to rule out a replay.
      *  @throws GeneralSecurityException if something goes wrong with Decryption.
      *  @throws VerificationException If the signature is messy.
      */
     public EncipheredAck getEncipheredAck(String ticketPresentation)
                 throws java.security.GeneralSecurityException
                     , MessageException
+                    , ReplayStoreFullException
             {
         return this.getEncipheredAck(new TicketPresentation(ticketPresentation));
     }//getEncipheredAck(String)*/
@@ -177,12 +351,15 @@ public class ServerosProvider extends Encrypter {
      *
      *  @throws NonceMismatchException If one of the nonces does not match.
      *  @throws StaleRequestException If the Ticket is stale.
+     *  @throws ReplayException If the presentation has already been acknowledged.
+     *  @throws ReplayStoreFullException If too many presentations have arrived to rule out a replay.
      *  @throws GeneralSecurityException if something goes wrong with Decryption.
      *  @throws VerificationException If the signature is messy.
      */
     public EncipheredAck getEncipheredAck(JsonObject ticketPresentation)
                 throws java.security.GeneralSecurityException
                     , MessageException
+                    , ReplayStoreFullException
             {
         return this.getEncipheredAck(new TicketPresentation(ticketPresentation));
     }//getEncipheredAck(JsonObject)*/
@@ -203,10 +380,44 @@ public class ServerosProvider extends Encrypter {
                 throws java.security.GeneralSecurityException
                     , MessageException
             {
-        Ticket ticket = this.getTicket(p);
+        try {
+            return this.getCredentials(p, this.getTicket(p));
+        } catch (MessageException e) {
+            this.metrics.error(e);
+            throw e;
+        }
+    }//getCredentials(TicketPresentation)*/
+
+    /**
+     *  Extract credentials from a Ticket that has already been decrypted and verified.
+     *
+     *  @param p The presented Ticket information.
+     *  @param ticket The ticket, having already been decrypted and Verified.
+     *
+     *  @return The Credentials issued by the Authentication Master.
+     *
+     *  @throws NonceMismatchException If one of the nonces does not match.
+     *  @throws StaleRequestException If the Ticket is stale.
+     *  @throws GeneralSecurityException if something goes wrong with Decryption.
+     */
+    private Credentials getCredentials(TicketPresentation p, Ticket ticket)
+                throws java.security.GeneralSecurityException
+                    , MessageException
+            {
         TicketId id = this.getId(p, ticket);
 
         this.validate(ticket, id);
+        return this.getCredentials(ticket);
+    }//getCredentials(TicketPresentation, Ticket)*/
+
+    /**
+     *  Build the Credentials carried by a Ticket that has already been validated.
+     *
+     *  @param ticket The ticket, having already been decrypted, Verified and validated.
+     *
+     *  @return The Credentials issued by the Authentication Master.
+     */
+    private Credentials getCredentials(Ticket ticket) {
         return new Credentials(
             ticket.requester
             , ticket.id
@@ -215,7 +426,7 @@ public class ServerosProvider extends Encrypter {
             , ticket.getExpiry()
             , ticket.authData
         );
-    }//getCredentials(TicketPresentation)*/
+    }//getCredentials(Ticket)*/
 
     /**
      *  Extract credentials from the ticket.
@@ -275,4 +486,166 @@ public class ServerosProvider extends Encrypter {
             {
         return this.getCredentials(new TicketPresentation(ticketPresentation));
     }//getCredentials(JsonObject)*/
+
+    /**
+     *  Extract credentials from a batch of presentations.  Each distinct Ticket is decrypted and
+     *  verified once, on the batch pool, no matter how many presentations carry it; the
+     *  presentations are then checked in parallel against their Tickets.
+     *
+     *  @param presentations The presented Ticket information.
+     *
+     *  @return a result for each presentation, in the same order.
+     */
+    public List<BatchResult> getCredentials(List<TicketPresentation> presentations) {
+        ForkJoinPool pool = this.batchPool;
+        Map<List<String>, CompletableFuture<Ticket>> tickets = new HashMap<List<String>, CompletableFuture<Ticket>>();
+        List<CompletableFuture<Credentials>> pending = new ArrayList<CompletableFuture<Credentials>>(presentations.size());
+        for (final TicketPresentation p : presentations) {
+            List<String> key = Arrays.asList(p.ticket.message, p.ticket.signature);
+            CompletableFuture<Ticket> ticket = tickets.get(key);
+            if (ticket == null) {
+                ticket = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return this.getTicket(p);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, pool);
+                tickets.put(key, ticket);
+            }
+            pending.add(ticket.thenApplyAsync(t -> {
+                try {
+                    return this.getCredentials(p, t);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, pool));
+        }
+        List<BatchResult> results = new ArrayList<BatchResult>(pending.size());
+        for (CompletableFuture<Credentials> f : pending) {
+            try {
+                results.add(new BatchResult(f.join(), null));
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ServerosException)
+                    this.metrics.error((ServerosException) e.getCause());
+                results.add(new BatchResult(null, e.getCause() instanceof Exception ? (Exception) e.getCause() : e));
+            }
+        }
+        return results;
+    }//getCredentials(List<TicketPresentation>)*/
+
+    /**
+     *  An acknowledged presentation: the ack for the consumer, and the Credentials it carried.
+     */
+    public static final class Acknowledgement {
+
+        /**
+         *  The acknowledgement.
+         */
+        private final EncipheredAck ack;
+
+        /**
+         *  The Credentials.
+         */
+        private final Credentials credentials;
+
+        /**
+         *  Constructor.
+         *
+         *  @param ack the acknowledgement.
+         *  @param credentials the Credentials.
+         */
+        private Acknowledgement(EncipheredAck ack, Credentials credentials) {
+            this.ack = ack;
+            this.credentials = credentials;
+        }//Acknowledgement(EncipheredAck, Credentials)*/
+
+        /**
+         *  Get the acknowledgement.
+         *
+         *  @return a message, ready to return to the consumer.
+         */
+        public EncipheredAck getAck() {
+            return this.ack;
+        }//getAck()*/
+
+        /**
+         *  Get the Credentials.
+         *
+         *  @return The Credentials issued by the Authentication Master.
+         */
+        public Credentials getCredentials() {
+            return this.credentials;
+        }//getCredentials()*/
+    }//Acknowledgement*/
+
+    /**
+     *  The outcome of one presentation in a batch: either Credentials, or what went wrong.
+     */
+    public static final class BatchResult {
+
+        /**
+         *  The Credentials, or null if the presentation failed.
+         */
+        private final Credentials credentials;
+
+        /**
+         *  Why the presentation failed, or null if it didn't.
+         */
+        private final Exception failure;
+
+        /**
+         *  Constructor.
+         *
+         *  @param credentials the Credentials, or null.
+         *  @param failure the failure, or null.
+         */
+        private BatchResult(Credentials credentials, Exception failure) {
+            this.credentials = credentials;
+            this.failure = failure;
+        }//BatchResult(Credentials, Exception)*/
+
+        /**
+         *  Did the presentation succeed?
+         *
+         *  @return true if there are Credentials.
+         */
+        public boolean isSuccess() {
+            return this.failure == null;
+        }//isSuccess()*/
+
+        /**
+         *  Get the Credentials, or the reason there aren't any.
+         *
+         *  @return The Credentials issued by the Authentication Master.
+         *
+         *  @throws NonceMismatchException If one of the nonces does not match.
+         *  @throws StaleRequestException If the Ticket is stale.
+         *  @throws GeneralSecurityException if something goes wrong with Decryption.
+         *  @throws VerificationException If the signature is messy.
+         */
+        public Credentials getCredentials()
+                    throws java.security.GeneralSecurityException
+                        , MessageException
+                {
+            if (this.failure instanceof java.security.GeneralSecurityException)
+                throw (java.security.GeneralSecurityException) this.failure;
+            if (this.failure instanceof MessageException)
+                throw (MessageException) this.failure;
+            if (this.failure instanceof RuntimeException)
+                throw (RuntimeException) this.failure;
+            if (this.failure != null)
+                throw new IllegalStateException(this.failure);
+            return this.credentials;
+        }//getCredentials()*/
+
+        /**
+         *  Get what went wrong.
+         *
+         *  @return the failure, or null if the presentation succeeded.
+         */
+        public Exception getFailure() {
+            return this.failure;
+        }//getFailure()*/
+    }//BatchResult*/
 }//ServerosProvider*/
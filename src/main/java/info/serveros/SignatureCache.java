@@ -0,0 +1,89 @@
+package info.serveros;
+
+import info.serveros.algorithms.HashSpec;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Map;
+
+/**
+ *  Initialized Signature engines, cached per thread and per key.  Like the RSA Ciphers, the keys used
+ *  to sign and verify almost never change, so each thread keeps its engines ready to go.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+final class SignatureCache {
+
+    /**
+     *  The most engines any one thread will keep initialized.
+     */
+    public static final int MAX_ENGINES = 16;
+
+    /**
+     *  The initialized engines, least recently used first.
+     */
+    private static final ThreadLocal<Map<KeySlot, Signature>> engines = KeySlot.perThread(SignatureCache.MAX_ENGINES);
+
+    /**
+     *  Static Only.
+     */
+    private SignatureCache() {
+    }//SignatureCache()*/
+
+    /**
+     *  Sign some data.
+     *
+     *  @param rsaKey the private key to sign with.
+     *  @param data the data to sign.
+     *  @param algorithm The hash algorithm to use.
+     *
+     *  @return the raw signature.
+     *
+     *  @throws GeneralSecurityException if something goes wrong signing.
+     */
+    public static byte[] sign(PrivateKey rsaKey, byte[] data, HashSpec algorithm)
+                throws java.security.GeneralSecurityException
+            {
+        Map<KeySlot, Signature> cache = SignatureCache.engines.get();
+        //Private and public keys never share an identity, so the key also says whether we sign or verify.
+        KeySlot s = new KeySlot(algorithm.ordinal(), rsaKey);
+        Signature engine = cache.remove(s);
+        if (engine == null) {
+            engine = algorithm.getInstance();
+            engine.initSign(rsaKey);
+        }
+        //sign() resets the engine to its initialized state - unless it throws, in which case we drop it.
+        engine.update(data);
+        byte[] toReturn = engine.sign();
+        cache.put(s, engine);
+        return toReturn;
+    }//sign(PrivateKey, byte[], HashSpec)*/
+
+    /**
+     *  Verify a signature.
+     *
+     *  @param rsaKey the public key to verify the signature against.
+     *  @param data the data that was signed.
+     *  @param algorithm the hash used to sign the data.
+     *  @param signature the raw signature.
+     *
+     *  @return true if the signatures match, false otherwise.
+     *
+     *  @throws GeneralSecurityException if something goes wrong verifying.
+     */
+    public static boolean verify(PublicKey rsaKey, byte[] data, HashSpec algorithm, byte[] signature)
+                throws java.security.GeneralSecurityException
+            {
+        Map<KeySlot, Signature> cache = SignatureCache.engines.get();
+        KeySlot s = new KeySlot(algorithm.ordinal(), rsaKey);
+        Signature engine = cache.remove(s);
+        if (engine == null) {
+            engine = algorithm.getInstance();
+            engine.initVerify(rsaKey);
+        }
+        engine.update(data);
+        boolean toReturn = engine.verify(signature);
+        cache.put(s, engine);
+        return toReturn;
+    }//verify(PublicKey, byte[], HashSpec, byte[])*/
+}//SignatureCache*/
@@ -0,0 +1,192 @@
+package info.serveros;
+
+import info.serveros.exceptions.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import javax.json.JsonValue;
+
+/**
+ *  Coalesces concurrent requests for the same Credentials.  The first caller for a key performs the
+ *  handshake; everyone who asks while it's in flight waits for it, and gets the same Credentials -
+ *  or the same exception.  Blocking and asynchronous requests share one table, so a blocking call
+ *  and an asynchronous one for the same key share one handshake too.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class SingleFlight {
+
+    /**
+     *  The handshakes currently in flight, blocking or not.
+     */
+    private final ConcurrentMap<CredentialKey, CompletableFuture<Credentials>> flights
+        = new ConcurrentHashMap<CredentialKey, CompletableFuture<Credentials>>();
+
+    /**
+     *  Get some Credentials from the source, sharing the work with any concurrent callers.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials are registered.
+     *  @param source where to get fresh credentials.
+     *
+     *  @return the credentials from the source.
+     *
+     *  @throws UnsupportedCipherSpecException if the source throws it.
+     *  @throws UnsupportedHashSpecException if the source throws it.
+     *  @throws java.security.GeneralSecurityException if the source throws it.
+     *  @throws VerificationException if the source throws it.
+     *  @throws java.io.IOException if the source throws it, or if interrupted while waiting.
+     *  @throws StaleRequestException if the source throws it.
+     *  @throws NonceMismatchException if the source throws it.
+     *  @throws UnrecognizedResponseCodeException if the source throws it.
+     */
+    public Credentials fetch(JsonValue requested, String endpoint, CredentialCache.Source source)
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+                    , java.security.GeneralSecurityException
+                    , VerificationException
+                    , java.io.IOException
+                    , StaleRequestException
+                    , NonceMismatchException
+                    , UnrecognizedResponseCodeException
+            {
+        CredentialKey key = new CredentialKey(requested, endpoint);
+        CompletableFuture<Credentials> mine = new CompletableFuture<Credentials>();
+        CompletableFuture<Credentials> theirs = this.flights.putIfAbsent(key, mine);
+        if (theirs != null)
+            return SingleFlight.await(theirs);
+        Credentials result = null;
+        Throwable failure = null;
+        try {
+            result = source.fetch();
+        } catch (Throwable t) {
+            failure = t;
+        }
+        this.flights.remove(key, mine);
+        if (failure == null)
+            mine.complete(result);
+        else
+            mine.completeExceptionally(failure);
+        return SingleFlight.await(mine);
+    }//fetch(JsonValue, String, CredentialCache.Source)*/
+
+    /**
+     *  Wrap a source so that every fetch through it is coalesced.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials are registered.
+     *  @param source where to get fresh credentials.
+     *
+     *  @return a source that shares concurrent fetches.
+     */
+    public CredentialCache.Source wrap(final JsonValue requested, final String endpoint, final CredentialCache.Source source) {
+        return new CredentialCache.Source() {
+            @Override
+            public Credentials fetch()
+                        throws UnsupportedCipherSpecException
+                            , UnsupportedHashSpecException
+                            , java.security.GeneralSecurityException
+                            , VerificationException
+                            , java.io.IOException
+                            , StaleRequestException
+                            , NonceMismatchException
+                            , UnrecognizedResponseCodeException
+                    {
+                return SingleFlight.this.fetch(requested, endpoint, source);
+            }//fetch()*/
+        };
+    }//wrap(JsonValue, String, CredentialCache.Source)*/
+
+    /**
+     *  Get some Credentials from an asynchronous source, sharing the work with any concurrent
+     *  callers.  Each caller gets its own copy of the shared future, so cancelling one doesn't
+     *  cancel the others.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials are registered.
+     *  @param source where to get fresh credentials.
+     *
+     *  @return a future for the credentials from the source.
+     */
+    public CompletableFuture<Credentials> fetchAsync(JsonValue requested, String endpoint, CredentialCache.AsyncSource source) {
+        final CredentialKey key = new CredentialKey(requested, endpoint);
+        final CompletableFuture<Credentials> mine = new CompletableFuture<Credentials>();
+        CompletableFuture<Credentials> theirs = this.flights.putIfAbsent(key, mine);
+        if (theirs != null)
+            return theirs.copy();
+        CredentialCache.fetch(source).whenComplete((credentials, failure) -> {
+            this.flights.remove(key, mine);
+            if (failure == null)
+                mine.complete(credentials);
+            else
+                mine.completeExceptionally(failure);
+        });
+        return mine.copy();
+    }//fetchAsync(JsonValue, String, CredentialCache.AsyncSource)*/
+
+    /**
+     *  Wrap an asynchronous source so that every fetch through it is coalesced.
+     *
+     *  @param requested the ID of the service.
+     *  @param endpoint the Service Provider endpoint at which credentials are registered.
+     *  @param source where to get fresh credentials.
+     *
+     *  @return a source that shares concurrent fetches.
+     */
+    public CredentialCache.AsyncSource wrapAsync(final JsonValue requested, final String endpoint
+                , final CredentialCache.AsyncSource source
+            ) {
+        return () -> SingleFlight.this.fetchAsync(requested, endpoint, source);
+    }//wrapAsync(JsonValue, String, CredentialCache.AsyncSource)*/
+
+    /**
+     *  Wait for a shared handshake, and report its outcome.
+     *
+     *  @param flight the handshake.
+     *
+     *  @return the Credentials.
+     *
+     *  @throws UnsupportedCipherSpecException if the handshake threw it.
+     *  @throws UnsupportedHashSpecException if the handshake threw it.
+     *  @throws java.security.GeneralSecurityException if the handshake threw it.
+     *  @throws VerificationException if the handshake threw it.
+     *  @throws java.io.IOException if the handshake threw it, or if interrupted while waiting.
+     *  @throws StaleRequestException if the handshake threw it.
+     *  @throws NonceMismatchException if the handshake threw it.
+     *  @throws UnrecognizedResponseCodeException if the handshake threw it.
+     */
+    private static Credentials await(CompletableFuture<Credentials> flight)
+                throws UnsupportedCipherSpecException
+                    , UnsupportedHashSpecException
+                    , java.security.GeneralSecurityException
+                    , VerificationException
+                    , java.io.IOException
+                    , StaleRequestException
+                    , NonceMismatchException
+                    , UnrecognizedResponseCodeException
+            {
+        Throwable t;
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw (java.io.InterruptedIOException) new java.io.InterruptedIOException(
+                "Interrupted waiting on a shared handshake."
+            ).initCause(e);
+        } catch (ExecutionException e) {
+            t = e.getCause();
+        }
+        if (t instanceof UnsupportedCipherSpecException) throw (UnsupportedCipherSpecException) t;
+        if (t instanceof UnsupportedHashSpecException) throw (UnsupportedHashSpecException) t;
+        if (t instanceof java.security.GeneralSecurityException) throw (java.security.GeneralSecurityException) t;
+        if (t instanceof VerificationException) throw (VerificationException) t;
+        if (t instanceof java.io.IOException) throw (java.io.IOException) t;
+        if (t instanceof StaleRequestException) throw (StaleRequestException) t;
+        if (t instanceof NonceMismatchException) throw (NonceMismatchException) t;
+        if (t instanceof UnrecognizedResponseCodeException) throw (UnrecognizedResponseCodeException) t;
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new IllegalStateException(t);
+    }//await(CompletableFuture)*/
+}//SingleFlight*/
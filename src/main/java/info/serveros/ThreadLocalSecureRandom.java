@@ -0,0 +1,110 @@
+package info.serveros;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ *  A Random that hands every thread its own SecureRandom.  A single SecureRandom is synchronized,
+ *  so sharing one between many threads serializes key generation.  Pass one of these anywhere a
+ *  Random is accepted - like OneTimeCredentials(CipherSpec, Random).
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class ThreadLocalSecureRandom extends Random {
+
+    /**
+     *  Version for Serialization.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     *  The SecureRandom algorithm, or null for the platform default.  Kept so a deserialized copy can
+     *  be rebuilt.
+     */
+    private final String algorithm;
+
+    /**
+     *  The per-thread SecureRandoms.  Not serialized - readResolve builds fresh ones.
+     */
+    private final transient ThreadLocal<SecureRandom> generators;
+
+    /**
+     *  Constructor.  Each thread gets a default, self-seeding SecureRandom.
+     */
+    public ThreadLocalSecureRandom() {
+        this(null);
+    }//ThreadLocalSecureRandom()*/
+
+    /**
+     *  Constructor.  Each thread gets a SecureRandom of the named algorithm.
+     *
+     *  @param algorithm the SecureRandom algorithm to use, or null for the platform default.
+     */
+    public ThreadLocalSecureRandom(final String algorithm) {
+        this.algorithm = algorithm;
+        this.generators = new ThreadLocal<SecureRandom>() {
+            @Override
+            protected SecureRandom initialValue() {
+                if (algorithm == null)
+                    return new SecureRandom();
+                try {
+                    return SecureRandom.getInstance(algorithm);
+                } catch (java.security.NoSuchAlgorithmException e) {
+                    throw new IllegalArgumentException(algorithm, e);
+                }
+            }//initialValue()*/
+        };
+    }//ThreadLocalSecureRandom(String)*/
+
+    /**
+     *  Replace a deserialized instance with a fresh one, since the per-thread SecureRandoms aren't
+     *  serialized.  Without this the copy's generators would be null.
+     *
+     *  @return a new ThreadLocalSecureRandom of the same algorithm.
+     */
+    private Object readResolve() {
+        return new ThreadLocalSecureRandom(this.algorithm);
+    }//readResolve()*/
+
+    /**
+     *  Get the SecureRandom belonging to this thread.
+     *
+     *  @return the SecureRandom for the current thread.
+     */
+    public SecureRandom current() {
+        return this.generators.get();
+    }//current()*/
+
+    /**
+     *  Fill an array with random bytes, from this thread's SecureRandom.
+     *
+     *  @param bytes the array to fill.
+     */
+    @Override
+    public void nextBytes(byte[] bytes) {
+        this.current().nextBytes(bytes);
+    }//nextBytes(byte[])*/
+
+    /**
+     *  Generate some random bits, from this thread's SecureRandom.  Every other Random method builds
+     *  on this one.
+     *
+     *  @param bits the number of bits wanted.
+     *
+     *  @return an int with the requested number of random low-order bits.
+     */
+    @Override
+    protected int next(int bits) {
+        return this.current().nextInt() >>> (32 - bits);
+    }//next(int)*/
+
+    /**
+     *  Seeding is not supported - each SecureRandom seeds itself.  Random's constructor calls this,
+     *  so it must quietly do nothing.
+     *
+     *  @param seed ignored.
+     */
+    @Override
+    public synchronized void setSeed(long seed) {
+    }//setSeed(long)*/
+}//ThreadLocalSecureRandom*/
@@ -0,0 +1,203 @@
+package info.serveros;
+
+import info.serveros.Encrypter.CryptoMessage;
+import info.serveros.exceptions.VerificationException;
+import info.serveros.messages.Ticket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *  A cache of Tickets that have already been decrypted and verified, keyed by a SHA-256 digest of
+ *  the sealed Ticket as the Master sent it.  Presenting the same Ticket again then costs a digest
+ *  instead of an RSA decryption and a signature check.  A Ticket is held until it expires, or until
+ *  it's too stale to be accepted anyway - whichever comes first.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class TicketCache {
+
+    /**
+     *  By default, hold this many Tickets.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     *  The most Tickets to hold.
+     */
+    public final int maxEntries;
+
+    /**
+     *  The verified Tickets.
+     */
+    private final ConcurrentMap<ByteBuffer, Entry> entries = new ConcurrentHashMap<ByteBuffer, Entry>();
+
+    /**
+     *  The per-thread digests.
+     */
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (java.security.NoSuchAlgorithmException e) {
+                //Every JVM is required to support SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }//initialValue()*/
+    };
+
+    /**
+     *  Constructor.  Holds up to DEFAULT_MAX_ENTRIES Tickets.
+     */
+    public TicketCache() {
+        this(TicketCache.DEFAULT_MAX_ENTRIES);
+    }//TicketCache()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param maxEntries the most Tickets to hold.
+     */
+    public TicketCache(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("A TicketCache must hold at least one Ticket: " + maxEntries);
+        this.maxEntries = maxEntries;
+    }//TicketCache(int)*/
+
+    /**
+     *  Get a verified Ticket - from the cache if possible, from the source if not.
+     *
+     *  @param sealed the encrypted, signed Ticket.
+     *  @param source where to decrypt and verify it.
+     *
+     *  @return the Ticket.
+     *
+     *  @throws java.security.GeneralSecurityException if the source throws it.
+     *  @throws VerificationException if the source throws it.
+     */
+    public Ticket get(CryptoMessage sealed, Source source)
+                throws java.security.GeneralSecurityException
+                    , VerificationException
+            {
+        ByteBuffer key = TicketCache.digest(sealed);
+        long now = System.currentTimeMillis();
+        Entry e = this.entries.get(key);
+        if (e != null) {
+            if (now < e.deadline)
+                return e.ticket;
+            this.entries.remove(key, e);
+        }
+        Ticket ticket = source.verify();
+        long deadline = Math.min(
+            ticket.getExpiry().getTime()
+            , ticket.getTimestamp().getTime() + Encrypter.STALE_REQUEST_TOLERANCE
+        );
+        if (now < deadline) {
+            if (this.entries.size() >= this.maxEntries)
+                this.evict(now);
+            this.entries.put(key, new Entry(ticket, deadline));
+        }
+        return ticket;
+    }//get(CryptoMessage, Source)*/
+
+    /**
+     *  Make room.  Expired Tickets go first; if that isn't enough, a quarter of the rest go too.
+     *
+     *  @param now the current time.
+     */
+    private void evict(long now) {
+        Iterator<Entry> it = this.entries.values().iterator();
+        while (it.hasNext()) {
+            if (now >= it.next().deadline)
+                it.remove();
+        }
+        int target = this.maxEntries - this.maxEntries / 4;
+        it = this.entries.values().iterator();
+        while (this.entries.size() >= target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }//evict(long)*/
+
+    /**
+     *  The number of Tickets held.
+     *
+     *  @return the number of cached Tickets, some of which may have expired.
+     */
+    public int size() {
+        return this.entries.size();
+    }//size()*/
+
+    /**
+     *  Forget all Tickets.
+     */
+    public void clear() {
+        this.entries.clear();
+    }//clear()*/
+
+    /**
+     *  Digest a sealed Ticket - the message and the signature both, so only the exact bytes that
+     *  were verified can hit.
+     *
+     *  @param sealed the encrypted, signed Ticket.
+     *
+     *  @return the digest, wrapped so it can be compared by value.
+     */
+    private static ByteBuffer digest(CryptoMessage sealed) {
+        MessageDigest md = TicketCache.digests.get();
+        md.update(sealed.message.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        md.update(sealed.signature.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(md.digest());
+    }//digest(CryptoMessage)*/
+
+    /**
+     *  Somewhere to decrypt and verify a Ticket.
+     */
+    public interface Source {
+
+        /**
+         *  Decrypt and verify the Ticket.
+         *
+         *  @return the verified Ticket.
+         *
+         *  @throws java.security.GeneralSecurityException if something goes wrong with Decryption.
+         *  @throws VerificationException If the signature is messy.
+         */
+        Ticket verify()
+                throws java.security.GeneralSecurityException
+                    , VerificationException
+            ;
+    }//Source*/
+
+    /**
+     *  A verified Ticket, and when to forget it.
+     */
+    private static final class Entry {
+
+        /**
+         *  The Ticket.
+         */
+        private final Ticket ticket;
+
+        /**
+         *  When to forget the Ticket, in milliseconds since the epoch.
+         */
+        private final long deadline;
+
+        /**
+         *  Constructor.
+         *
+         *  @param ticket the Ticket.
+         *  @param deadline when to forget it.
+         */
+        private Entry(Ticket ticket, long deadline) {
+            this.ticket = ticket;
+            this.deadline = deadline;
+        }//Entry(Ticket, long)*/
+    }//Entry*/
+}//TicketCache*/
@@ -0,0 +1,131 @@
+package info.serveros.algorithms;
+
+import java.util.EnumSet;
+import java.security.Signature;
+import javax.crypto.Cipher;
+
+/**
+ *  Which CipherSpecs and HashSpecs the current JVM actually supports.  Probing every algorithm is
+ *  expensive, and the answer can't change while the process is running - so each algorithm is
+ *  probed once, the first time anyone asks, and the answer is shared by everyone.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public final class Capabilities {
+
+    /**
+     *  Set this system property to "true" to probe every algorithm as soon as the Encrypter
+     *  class is loaded, rather than when the first Encrypter is built.
+     */
+    public static final String WARM_UP_PROPERTY = "info.serveros.algorithms.warmUp";
+
+    /**
+     *  Static Only.
+     */
+    private Capabilities() {
+    }//Capabilities()*/
+
+    /**
+     *  Decide if a CipherSpec is supported by this JVM.
+     *
+     *  @param cipher the CipherSpec in question.
+     *
+     *  @return true if Ciphers of this kind can be built with the full block and key size.
+     */
+    public static boolean isSupported(CipherSpec cipher) {
+        return Ciphers.SUPPORTED.contains(cipher);
+    }//isSupported(CipherSpec)*/
+
+    /**
+     *  Decide if a HashSpec is supported by this JVM.
+     *
+     *  @param hash the HashSpec in question.
+     *
+     *  @return true if Signatures of this kind can be built.
+     */
+    public static boolean isSupported(HashSpec hash) {
+        return Hashes.SUPPORTED.contains(hash);
+    }//isSupported(HashSpec)*/
+
+    /**
+     *  Probe every algorithm now, if it hasn't been done already.
+     */
+    public static void warmUp() {
+        Capabilities.isSupported(CipherSpec.values()[0]);
+        Capabilities.isSupported(HashSpec.values()[0]);
+    }//warmUp()*/
+
+    /**
+     *  Probe a CipherSpec.
+     *
+     *  @param a the CipherSpec to probe.
+     *
+     *  @return true if the Cipher can be built, and has the expected block and key sizes.
+     */
+    private static boolean probe(CipherSpec a) {
+        try {
+            Cipher c = Cipher.getInstance(a.cipherSpec);
+            if (c.getBlockSize() * 8 != a.block)
+                return false;
+            if (Cipher.getMaxAllowedKeyLength(a.cipherSpec) < a.key)
+                return false;
+            return true;
+        } catch (java.security.GeneralSecurityException e) {
+            //Suppressing the exception cause frankly.
+            return false;
+        }
+    }//probe(CipherSpec)*/
+
+    /**
+     *  Probe a HashSpec.
+     *
+     *  @param h the HashSpec to probe.
+     *
+     *  @return true if the Signature can be built.
+     */
+    private static boolean probe(HashSpec h) {
+        try {
+            Signature.getInstance(h.hashName);
+            return true;
+        } catch (java.security.GeneralSecurityException e) {
+            //Suppressing the exception cause frankly.
+            return false;
+        }
+    }//probe(HashSpec)*/
+
+    /**
+     *  Holds the supported CipherSpecs - initialized by the JVM the first time it's touched.
+     */
+    private static final class Ciphers {
+
+        /**
+         *  The supported CipherSpecs.
+         */
+        private static final EnumSet<CipherSpec> SUPPORTED = EnumSet.noneOf(CipherSpec.class);
+
+        static {
+            for (CipherSpec a: CipherSpec.values()) {
+                if (Capabilities.probe(a))
+                    SUPPORTED.add(a);
+            }
+        }
+    }//Ciphers*/
+
+    /**
+     *  Holds the supported HashSpecs - initialized by the JVM the first time it's touched.
+     */
+    private static final class Hashes {
+
+        /**
+         *  The supported HashSpecs.
+         */
+        private static final EnumSet<HashSpec> SUPPORTED = EnumSet.noneOf(HashSpec.class);
+
+        static {
+            for (HashSpec h: HashSpec.values()) {
+                if (Capabilities.probe(h))
+                    SUPPORTED.add(h);
+            }
+        }
+    }//Hashes*/
+}//Capabilities*/
@@ -1,6 +1,7 @@
 package info.serveros.algorithms;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import javax.crypto.Cipher;
 
 /**
@@ -531,6 +532,17 @@ public enum CipherSpec {
      */
     public final int key;
 
+    /**
+     *  Cipher instances, cached per thread.  A Cipher is not thread safe, but it can be re-initialized
+     *  as many times as we like - so each thread keeps one of each kind it has used.
+     */
+    private static final ThreadLocal<EnumMap<CipherSpec, Cipher>> instances = new ThreadLocal<EnumMap<CipherSpec, Cipher>>() {
+        @Override
+        protected EnumMap<CipherSpec, Cipher> initialValue() {
+            return new EnumMap<CipherSpec, Cipher>(CipherSpec.class);
+        }//initialValue()*/
+    };
+
     /**
      *  Create a new CipherSpec.
      *
@@ -580,6 +592,23 @@ public enum CipherSpec {
         return Cipher.getInstance(this.cipherSpec);
     }//getInstance()*/
 
+    /**
+     *  Get a Cipher Instance owned by the current thread.  Skips the provider lookup after the first
+     *  call on each thread.  The instance must be (re)initialized before every use, and must not
+     *  escape the calling thread.
+     *
+     *  @return a Cipher for this algorithm, in an unknown state.
+     */
+    public Cipher getCachedInstance() throws java.security.NoSuchAlgorithmException, javax.crypto.NoSuchPaddingException {
+        EnumMap<CipherSpec, Cipher> cache = CipherSpec.instances.get();
+        Cipher c = cache.get(this);
+        if (c == null) {
+            c = this.getInstance();
+            cache.put(this, c);
+        }
+        return c;
+    }//getCachedInstance()*/
+
     /**
      *  Get the name of this algorithm.
      */
@@ -589,7 +618,8 @@ public enum CipherSpec {
 
     /**
      *  Filter the list of given algorithms, returning only those supported by the JVM.
-     *  If the argument is null, then start with all available algorithms.
+     *  If the argument is null, then start with all available algorithms.  Support is probed
+     *  once per process - see Capabilities.
      *
      *  @param source an array of acceptable algorithms, in order of preference.
      *  @return of the passed algorithms, only the ones supported by this system.
@@ -600,20 +630,8 @@ public enum CipherSpec {
 
         ArrayList<CipherSpec> toReturn = new ArrayList<>();
         for (CipherSpec a: source) {
-            try {
-                Cipher c = Cipher.getInstance(a.cipherSpec);
-                if (c.getBlockSize() * 8 != a.block) {
-                    System.out.println(a.cipherSpec + " block size diff: " + c.getBlockSize() + "/" + a.block);
-                    continue;
-                }
-                if (Cipher.getMaxAllowedKeyLength(a.cipherSpec) < a.key) {
-                    System.out.println(a.cipherSpec + " key size diff: " + Cipher.getMaxAllowedKeyLength(a.cipherSpec) + "/" + a.key);
-                    continue;
-                }
+            if (Capabilities.isSupported(a))
                 toReturn.add(a);
-            } catch (java.security.GeneralSecurityException e) {
-                //Suppressing the exception cause frankly.
-            }
         }
         return toReturn.toArray(new CipherSpec[toReturn.size()]);
     }//filter(CipherSpec[])*/
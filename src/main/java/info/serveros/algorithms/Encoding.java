@@ -0,0 +1,41 @@
+package info.serveros.algorithms;
+
+/**
+ *  An identifier for the way a message is encoded before it's enciphered.  Every Serveros
+ *  implementation speaks json; anything else has to be agreed first.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public enum Encoding {
+
+        /**
+         *  JSON text.
+         */
+        json,
+
+        /**
+         *  CBOR (RFC 7049) - the same fields as json, in a compact binary form.
+         */
+        cbor
+        ;
+
+    /**
+     *  Change to a string for output reasons.
+     *
+     *  @return the name of this encoding.
+     */
+    public String toString() {
+        return this.name();
+    }//toString()*/
+
+    /**
+     *  Get an Encoding from its string value.
+     *
+     *  @param str The string name.
+     *
+     *  @return the encoding.
+     */
+    public static Encoding fromString(String str) {
+        return Encoding.valueOf(str);
+    }//fromString(String)*/
+}//Encoding*/
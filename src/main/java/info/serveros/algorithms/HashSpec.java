@@ -102,7 +102,8 @@ public enum HashSpec {
 
     /**
      *  Filter the list of given algorithms, returning only those supported by the JVM.
-     *  If the argument is null, then start with all available algorithms.
+     *  If the argument is null, then start with all available algorithms.  Support is probed
+     *  once per process - see Capabilities.
      *
      *  @param source an array of acceptable algorithms, in order of preference.
      *  @return of the passed algorithms, only the ones supported by this system.
@@ -113,12 +114,8 @@ public enum HashSpec {
 
         ArrayList<HashSpec> toReturn = new ArrayList<>();
         for (HashSpec h: source) {
-            try {
-                Signature s = Signature.getInstance(h.hashName);
+            if (Capabilities.isSupported(h))
                 toReturn.add(h);
-            } catch (java.security.GeneralSecurityException e) {
-                //Suppressing the exception cause frankly.
-            }
         }
         return toReturn.toArray(new HashSpec[toReturn.size()]);
     }//Filter(HashSpec[])*/
@@ -0,0 +1,117 @@
+package info.serveros.algorithms;
+
+import java.util.EnumSet;
+
+/**
+ *  An ordered list of acceptable algorithms, indexed for constant time membership checks and
+ *  preference lookups.  Immutable, so it can be shared freely between threads.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public final class Preferences<E extends Enum<E>> {
+
+    /**
+     *  The algorithms, most preferred first.
+     */
+    private final E[] ordered;
+
+    /**
+     *  The algorithms, as a set.
+     */
+    private final EnumSet<E> members;
+
+    /**
+     *  The position of each algorithm in the ordered list, indexed by ordinal.  -1 if absent.
+     */
+    private final int[] ranks;
+
+    /**
+     *  Constructor.
+     *
+     *  @param type the class of algorithm.
+     *  @param ordered the acceptable algorithms, most preferred first.
+     */
+    public Preferences(Class<E> type, E[] ordered) {
+        this.ordered = ordered.clone();
+        this.members = EnumSet.noneOf(type);
+        this.ranks = new int[type.getEnumConstants().length];
+        java.util.Arrays.fill(this.ranks, -1);
+        for (int i = this.ordered.length - 1; i >= 0; i--) {
+            this.members.add(this.ordered[i]);
+            this.ranks[this.ordered[i].ordinal()] = i;
+        }
+    }//Preferences(Class, E[])*/
+
+    /**
+     *  Decide if an algorithm is acceptable.
+     *
+     *  @param algorithm the algorithm in question.
+     *
+     *  @return true if the algorithm is in the list.
+     */
+    public boolean contains(E algorithm) {
+        return algorithm != null && this.members.contains(algorithm);
+    }//contains(E)*/
+
+    /**
+     *  Where an algorithm falls in the list.
+     *
+     *  @param algorithm the algorithm in question.
+     *
+     *  @return the position of the algorithm, where 0 is most preferred - or -1 if it's not in the list.
+     */
+    public int rank(E algorithm) {
+        return algorithm == null ? -1 : this.ranks[algorithm.ordinal()];
+    }//rank(E)*/
+
+    /**
+     *  The most preferred algorithm.
+     *
+     *  @return the first algorithm in the list, or null if the list is empty.
+     */
+    public E preferred() {
+        return this.ordered.length > 0 ? this.ordered[0] : null;
+    }//preferred()*/
+
+    /**
+     *  Select our preferred algorithm from among the available.
+     *
+     *  @param available the algorithms known to be supported elsewhere.
+     *
+     *  @return the highest preference algorithm in the parameter.  If there is no
+     *      parameter, it returns our most preferred algorithm.  If neither of those is possible,
+     *      it returns null.
+     */
+    public E select(E[] available) {
+        if (available == null)
+            return this.preferred();
+        E best = null;
+        int bestRank = Integer.MAX_VALUE;
+        for (E a: available) {
+            int r = this.rank(a);
+            if (r >= 0 && r < bestRank) {
+                best = a;
+                bestRank = r;
+            }
+        }
+        return best;
+    }//select(E[])*/
+
+    /**
+     *  The number of algorithms in the list.
+     *
+     *  @return the number of acceptable algorithms.
+     */
+    public int size() {
+        return this.ordered.length;
+    }//size()*/
+
+    /**
+     *  Get the list.
+     *
+     *  @return a clone of the algorithms, most preferred first.
+     */
+    public E[] toArray() {
+        return this.ordered.clone();
+    }//toArray()*/
+}//Preferences*/
@@ -0,0 +1,25 @@
+package info.serveros.exceptions;
+
+/**
+ *  Error for a message that has been seen before.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class ReplayException extends MessageException {
+
+    /**
+     *  Constructor.
+     */
+    public ReplayException() {
+        this(null);
+    }//ReplayException()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param cause The underlying exception.
+     */
+    public ReplayException(Throwable cause) {
+        super("This presentation has already been seen.", cause);
+    }//ReplayException(Throwable)*/
+}//ReplayException*/
@@ -0,0 +1,26 @@
+package info.serveros.exceptions;
+
+/**
+ *  Error for a presentation that can't be checked for replay, because the ReplayStore has no room
+ *  left this span.  Not the client's fault, and worth retrying - the next span starts empty.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class ReplayStoreFullException extends ServerosException {
+
+    /**
+     *  Constructor.
+     */
+    public ReplayStoreFullException() {
+        this(null);
+    }//ReplayStoreFullException()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param cause The underlying exception.
+     */
+    public ReplayStoreFullException(Throwable cause) {
+        super("Too many presentations to rule out a replay.  Try again shortly.", 503, cause);
+    }//ReplayStoreFullException(Throwable)*/
+}//ReplayStoreFullException*/
@@ -51,17 +51,23 @@ public abstract class UnsupportedException extends ServerosException {
     }//getAllowed()*/
 
     /**
-     *  For override by Children to include more info in the json_encodable response body.
+     *  For override by Children to include more info in the json_encodable response body.  The
+     *  allowed algorithms are written twice - as "supported" too, which is what consumers read.
      *
      *  @param out The JSON stream to write additional information to.
      */
     @Override
     public void addAdditionalInformation(JsonGenerator out) {
-        out.write("requested", this.requested.toString());
+        if (this.requested != null)
+            out.write("requested", this.requested.toString());
         out.writeStartArray("allowed");
         for(Object a: this.allowed)
             out.write(a.toString());
         out.writeEnd();
+        out.writeStartArray("supported");
+        for(Object a: this.allowed)
+            out.write(a.toString());
+        out.writeEnd();
     }//addAdditionalInformaiton(JsonGenerator)*/
 
     /**
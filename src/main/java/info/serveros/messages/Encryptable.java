@@ -4,6 +4,8 @@ import javax.json.stream.JsonGenerator;
 import java.util.Date;
 import javax.json.JsonObject;
 import info.serveros.Encrypter;
+import info.serveros.algorithms.Encoding;
+import javax.json.JsonArray;
 
 /**
  *  An encryptable class - keeps track of when it was created.
@@ -11,6 +13,11 @@ import info.serveros.Encrypter;
 public abstract class Encryptable extends info.serveros.JSONable {
     public static long MAX_SAFE_NONCE = 9007199254740991L;
 
+    /**
+     *  Where Nonces come from.
+     */
+    private static volatile NonceSource nonceSource = new SecureNonceSource();
+
     /**
      *  The time at which this Encryptable was created.
      */
@@ -75,6 +82,45 @@ public abstract class Encryptable extends info.serveros.JSONable {
         g.write("ts", this.timestamp.getTime());
     }
 
+    /**
+     *  Unpack the Encodings a peer advertised.
+     *
+     *  @param o the Json Object.
+     *
+     *  @return the Encodings the peer can read, in order of preference - or null if it didn't say.
+     *      Encodings this version doesn't know are left out.
+     */
+    protected static Encoding[] getEncodings(JsonObject o) {
+        JsonArray a = o.getJsonArray("encodings");
+        if (a == null)
+            return null;
+        java.util.ArrayList<Encoding> toReturn = new java.util.ArrayList<Encoding>(a.size());
+        for (int i = 0; i < a.size(); i++) {
+            try {
+                toReturn.add(Encoding.fromString(a.getString(i)));
+            } catch (IllegalArgumentException e) {
+                //Something newer than us - we can't use it anyway.
+            }
+        }
+        return toReturn.toArray(new Encoding[toReturn.size()]);
+    }//getEncodings(JsonObject)*/
+
+    /**
+     *  Advertise Encodings to a peer.  Nothing is written if there are none, so peers that only
+     *  speak json see exactly what they always have.
+     *
+     *  @param g The JSON Generator to output to.
+     *  @param encodings the Encodings we can read, or null.
+     */
+    protected static void writeEncodings(JsonGenerator g, Encoding[] encodings) {
+        if (encodings == null)
+            return;
+        g.writeStartArray("encodings");
+        for (Encoding e: encodings)
+            g.write(e.toString());
+        g.writeEnd();
+    }//writeEncodings(JsonGenerator, Encoding[])*/
+
     /**
      *  Decide if this Encryptable is Stale.
      *
@@ -90,7 +136,27 @@ public abstract class Encryptable extends info.serveros.JSONable {
      *  @return a random positive integer.
      */
     public static long generateNonce() {
-        return (long) Math.floor(Math.random() * Encryptable.MAX_SAFE_NONCE);
+        return Encryptable.nonceSource.nextNonce();
     }//generateNonce()*/
 
+    /**
+     *  Replace the source of Nonces for all Encryptables.
+     *
+     *  @param source the new NonceSource.
+     */
+    public static void setNonceSource(NonceSource source) {
+        if (source == null)
+            throw new IllegalArgumentException("NonceSource may not be null.");
+        Encryptable.nonceSource = source;
+    }//setNonceSource(NonceSource)*/
+
+    /**
+     *  Get the current source of Nonces.
+     *
+     *  @return the NonceSource in use.
+     */
+    public static NonceSource getNonceSource() {
+        return Encryptable.nonceSource;
+    }//getNonceSource()*/
+
 }//Encryptable*/
@@ -0,0 +1,15 @@
+package info.serveros.messages;
+
+/**
+ *  Somewhere to get Nonces from.  Implementations are shared by every thread that builds
+ *  Encryptables, so they must be thread safe - and preferably shouldn't contend.
+ */
+public interface NonceSource {
+
+    /**
+     *  Generate a Nonce.
+     *
+     *  @return a random integer between zero and Encryptable.MAX_SAFE_NONCE.
+     */
+    long nextNonce();
+}//NonceSource*/
@@ -0,0 +1,103 @@
+package info.serveros.messages;
+
+import info.serveros.ThreadLocalSecureRandom;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ *  The default NonceSource.  Every thread draws from its own SecureRandom, so there's no shared
+ *  state to fight over.  Optionally, each thread prefills a batch of Nonces at a time, paying for
+ *  the SecureRandom once per batch rather than once per Nonce.
+ */
+public class SecureNonceSource implements NonceSource {
+
+    /**
+     *  The number of Nonces each thread generates at a time.
+     */
+    public final int batchSize;
+
+    /**
+     *  Per thread randomness.
+     */
+    private final ThreadLocalSecureRandom randomness = new ThreadLocalSecureRandom();
+
+    /**
+     *  Per thread buffers of prefilled Nonces.
+     */
+    private final ThreadLocal<Batch> batches = new ThreadLocal<Batch>() {
+        @Override
+        protected Batch initialValue() {
+            return new Batch(SecureNonceSource.this.batchSize);
+        }//initialValue()*/
+    };
+
+    /**
+     *  Constructor.  Generates Nonces one at a time.
+     */
+    public SecureNonceSource() {
+        this(1);
+    }//SecureNonceSource()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param batchSize the number of Nonces each thread should generate at a time.
+     */
+    public SecureNonceSource(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.batchSize = batchSize;
+    }//SecureNonceSource(int)*/
+
+    /**
+     *  Generate a Nonce.
+     *
+     *  @return a random integer between zero and Encryptable.MAX_SAFE_NONCE.
+     */
+    @Override
+    public long nextNonce() {
+        if (this.batchSize == 1)
+            return this.randomness.current().nextLong() & Encryptable.MAX_SAFE_NONCE;
+        return this.batches.get().next();
+    }//nextNonce()*/
+
+    /**
+     *  A ring of prefilled Nonces, owned by a single thread.
+     */
+    private class Batch {
+
+        /**
+         *  The raw randomness.
+         */
+        private final byte[] bytes;
+
+        /**
+         *  The raw randomness, read as longs.
+         */
+        private final LongBuffer nonces;
+
+        /**
+         *  Constructor.
+         *
+         *  @param size the number of Nonces in the ring.
+         */
+        private Batch(int size) {
+            this.bytes = new byte[size * 8];
+            this.nonces = ByteBuffer.wrap(this.bytes).asLongBuffer();
+            this.nonces.position(this.nonces.limit());
+        }//Batch(int)*/
+
+        /**
+         *  Take the next Nonce from the ring, refilling it once it's used up.
+         *
+         *  @return a random integer between zero and Encryptable.MAX_SAFE_NONCE.
+         */
+        private long next() {
+            if (!this.nonces.hasRemaining()) {
+                SecureNonceSource.this.randomness.nextBytes(this.bytes);
+                this.nonces.rewind();
+            }
+            return this.nonces.get() & Encryptable.MAX_SAFE_NONCE;
+        }//next()*/
+    }//Batch*/
+}//SecureNonceSource*/
@@ -27,18 +27,36 @@ public class TicketAck extends Encryptable {
      */
     public final long finalNonce;
 
+    /**
+     *  The Encodings the server can read, or null if it only speaks json.
+     */
+    private final Encoding[] encodings;
+
     /**
      *  Constructor.
      *
      *  @param serverNonce The nonce generated by the server.
      *  @param requesterNonce the initial nonce generated by the Requester.
      *  @param finalNonce the final nonce generated by the requester.
+     *  @param encodings the Encodings the server can read, or null if it only speaks json.
      */
-    public TicketAck(long serverNonce, long requesterNonce, long finalNonce) {
+    public TicketAck(long serverNonce, long requesterNonce, long finalNonce, Encoding[] encodings) {
         super();
         this.serverNonce = serverNonce;
         this.requesterNonce = requesterNonce;
         this.finalNonce = finalNonce;
+        this.encodings = encodings == null ? null : encodings.clone();
+    }//TicketAck(long, long, long, Encoding[])*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param serverNonce The nonce generated by the server.
+     *  @param requesterNonce the initial nonce generated by the Requester.
+     *  @param finalNonce the final nonce generated by the requester.
+     */
+    public TicketAck(long serverNonce, long requesterNonce, long finalNonce) {
+        this(serverNonce, requesterNonce, finalNonce, null);
     }//TicketAck(long, long, long)*/
 
     /**
@@ -51,6 +69,7 @@ public class TicketAck extends Encryptable {
         this.serverNonce = o.getJsonNumber("serverNonce").longValue();
         this.requesterNonce = o.getJsonNumber("requesterNonce").longValue();
         this.finalNonce = o.getJsonNumber("finalNonce").longValue();
+        this.encodings = Encryptable.getEncodings(o);
     }//TicketAck(JsonObject)*/
 
     /**
@@ -62,6 +81,14 @@ public class TicketAck extends Encryptable {
         this(Encryptable.unJSON(s));
     }//TicketAck(String)*/
 
+    /**
+     *  Get the Encodings the server can read.
+     *
+     *  @return a clone of the Encodings, in order of preference - or null if it only speaks json.
+     */
+    public Encoding[] getEncodings() {
+        return this.encodings == null ? null : this.encodings.clone();
+    }//getEncodings()*/
 
     /**
      *  Add Json elements of the current object to the already started JSON object.
@@ -73,5 +100,6 @@ public class TicketAck extends Encryptable {
         g.write("serverNonce", this.serverNonce);
         g.write("requesterNonce", this.requesterNonce);
         g.write("finalNonce", this.finalNonce);
+        Encryptable.writeEncodings(g, this.encodings);
     }//jsonHelper(g)*/
 }//TicketAck*/
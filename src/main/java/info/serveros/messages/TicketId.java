@@ -38,6 +38,11 @@ public class TicketId extends Encryptable {
      */
     public final String iv;
 
+    /**
+     *  The Encodings the requester can read, or null if it only speaks json.
+     */
+    private final Encoding[] encodings;
+
     /**
      *  Constructor.
      *
@@ -46,14 +51,31 @@ public class TicketId extends Encryptable {
      *  @param requesterNonce The first nonce generated by the requester.
      *  @param finalNonce The second nonce generated by the requester.
      *  @param iv the Initial Vector to be used by the TicketAck.
+     *  @param encodings the Encodings the requester can read, or null if it only speaks json.
      */
-    public TicketId(JsonValue requester, long serverNonce, long requesterNonce, long finalNonce , String iv) {
+    public TicketId(JsonValue requester, long serverNonce, long requesterNonce, long finalNonce , String iv
+                , Encoding[] encodings
+            ) {
         super();
         this.requester = requester;
         this.serverNonce = serverNonce;
         this.requesterNonce = requesterNonce;
         this.finalNonce = finalNonce;
         this.iv = iv;
+        this.encodings = encodings == null ? null : encodings.clone();
+    }//TicketId(String, long, long, long, String, Encoding[])*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param requester The appliction that requested credentials.
+     *  @param serverNonce The nonce generated by the server.
+     *  @param requesterNonce The first nonce generated by the requester.
+     *  @param finalNonce The second nonce generated by the requester.
+     *  @param iv the Initial Vector to be used by the TicketAck.
+     */
+    public TicketId(JsonValue requester, long serverNonce, long requesterNonce, long finalNonce , String iv) {
+        this(requester, serverNonce, requesterNonce, finalNonce, iv, null);
     }//TicketId(String, long, long, long, String)*/
 
 
@@ -66,9 +88,22 @@ public class TicketId extends Encryptable {
      *  @param iv the Initial Vector to be used by the TicketAck.
      */
     public TicketId(JsonValue requester, long serverNonce, long requesterNonce, String iv) {
-        this(requester, serverNonce, requesterNonce, Encryptable.generateNonce(), iv);
+        this(requester, serverNonce, requesterNonce, iv, null);
     }//TicketId(String, long, long, String)*/
 
+    /**
+     *  Constructor - generates a new nonce.
+     *
+     *  @param requester The appliction that requested credentials.
+     *  @param serverNonce The nonce generated by the server.
+     *  @param requesterNonce The first nonce generated by the requester.
+     *  @param iv the Initial Vector to be used by the TicketAck.
+     *  @param encodings the Encodings the requester can read, or null if it only speaks json.
+     */
+    public TicketId(JsonValue requester, long serverNonce, long requesterNonce, String iv, Encoding[] encodings) {
+        this(requester, serverNonce, requesterNonce, Encryptable.generateNonce(), iv, encodings);
+    }//TicketId(String, long, long, String, Encoding[])*/
+
     /**
      *  Constructor - unpacks a JSON object.
      *
@@ -81,6 +116,7 @@ public class TicketId extends Encryptable {
         this.requesterNonce = o.getJsonNumber("requesterNonce").longValue();
         this.finalNonce = o.getJsonNumber("finalNonce").longValue();
         this.iv = o.getString("iv");
+        this.encodings = Encryptable.getEncodings(o);
     }
 
     /**
@@ -93,6 +129,15 @@ public class TicketId extends Encryptable {
     }//TIcketId(String)*/
 
 
+    /**
+     *  Get the Encodings the requester can read.
+     *
+     *  @return a clone of the Encodings, in order of preference - or null if it only speaks json.
+     */
+    public Encoding[] getEncodings() {
+        return this.encodings == null ? null : this.encodings.clone();
+    }//getEncodings()*/
+
     /**
      *  Add Json elements of the current object to the already started JSON object.
      *
@@ -105,5 +150,6 @@ public class TicketId extends Encryptable {
         g.write("requesterNonce", this.requesterNonce);
         g.write("finalNonce", this.finalNonce);
         g.write("iv", this.iv);
+        Encryptable.writeEncodings(g, this.encodings);
     }//jsonHelper(g)*/
 }//TicketId*/
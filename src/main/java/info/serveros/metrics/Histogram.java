@@ -0,0 +1,183 @@
+package info.serveros.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  A fixed-size histogram of non-negative longs, laid out like HdrHistogram: values below
+ *  2^precision are counted exactly, and every power of two above that is split into
+ *  2^(precision - 1) equal buckets, so each value is held to within one part in 2^(precision - 1).
+ *  The buckets are allocated up front; recording a value is an index computation and an atomic
+ *  increment, and never allocates or locks.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class Histogram {
+
+    /**
+     *  By default, keep this many significant bits - values are held to within about 1.6%.
+     */
+    public static final int DEFAULT_PRECISION = 7;
+
+    /**
+     *  The number of significant bits kept.
+     */
+    public final int precision;
+
+    /**
+     *  The number of buckets in each power of two above the exact range.
+     */
+    private final int half;
+
+    /**
+     *  The bucket counts.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     *  The number of values recorded.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     *  The sum of the values recorded.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     *  The largest value recorded.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     *  Constructor.  Keeps DEFAULT_PRECISION significant bits.
+     */
+    public Histogram() {
+        this(Histogram.DEFAULT_PRECISION);
+    }//Histogram()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param precision the number of significant bits to keep, from 2 to 16.  Memory use is fixed
+     *      at roughly (65 - precision) * 2^(precision + 2) bytes.
+     */
+    public Histogram(int precision) {
+        if (precision < 2 || precision > 16)
+            throw new IllegalArgumentException("Precision must be between 2 and 16 bits: " + precision);
+        this.precision = precision;
+        this.half = 1 << (precision - 1);
+        this.counts = new AtomicLongArray((65 - precision) * this.half);
+    }//Histogram(int)*/
+
+    /**
+     *  Record a value.
+     *
+     *  @param value the value.  Negative values are recorded as zero.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        this.counts.incrementAndGet(this.index(value));
+        this.count.increment();
+        this.sum.add(value);
+        long m;
+        while (value > (m = this.max.get()) && !this.max.compareAndSet(m, value));
+    }//record(long)*/
+
+    /**
+     *  Get the number of values recorded.
+     *
+     *  @return the count.
+     */
+    public long getCount() {
+        return this.count.sum();
+    }//getCount()*/
+
+    /**
+     *  Get the mean of the values recorded.
+     *
+     *  @return the mean, or zero if nothing has been recorded.
+     */
+    public double getMean() {
+        long n = this.count.sum();
+        return n == 0 ? 0.0 : (double) this.sum.sum() / n;
+    }//getMean()*/
+
+    /**
+     *  Get the largest value recorded.
+     *
+     *  @return the largest value, exactly, or zero if nothing has been recorded.
+     */
+    public long getMax() {
+        return this.max.get();
+    }//getMax()*/
+
+    /**
+     *  Get the value below which a percentage of the recorded values fall.
+     *
+     *  @param percentile the percentage, from 0 to 100.
+     *
+     *  @return the highest value in the bucket holding that percentile, or zero if nothing has been
+     *      recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[this.counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++)
+            total += snapshot[i] = this.counts.get(i);
+        if (total == 0)
+            return 0L;
+        long target = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target)
+                return Math.min(this.highest(i), this.max.get());
+        }
+        return this.max.get();
+    }//getValueAtPercentile(double)*/
+
+    /**
+     *  Forget every value recorded.  Values recorded while the reset is under way may be partly
+     *  kept.
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++)
+            this.counts.set(i, 0L);
+        this.count.reset();
+        this.sum.reset();
+        this.max.set(0L);
+    }//reset()*/
+
+    /**
+     *  Find the bucket for a value.
+     *
+     *  @param value a non-negative value.
+     *
+     *  @return the bucket's index.
+     */
+    private int index(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude < this.precision)
+            return (int) value;
+        int shift = magnitude - this.precision + 1;
+        return (shift + 1) * this.half + (int) (value >>> shift) - this.half;
+    }//index(long)*/
+
+    /**
+     *  Find the highest value a bucket holds.
+     *
+     *  @param index the bucket's index.
+     *
+     *  @return the highest value.
+     */
+    private long highest(int index) {
+        if (index < 2 * this.half)
+            return index;
+        int shift = index / this.half - 1;
+        long lowest = (long) (index % this.half + this.half) << shift;
+        return lowest + ((1L << shift) - 1);
+    }//highest(int)*/
+}//Histogram*/
@@ -0,0 +1,155 @@
+package info.serveros.metrics;
+
+import info.serveros.exceptions.ServerosException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  Metrics kept in memory: a Histogram of nanoseconds for each Timer, and a count for each Counter
+ *  and each kind of ServerosException.  Read it from a reporter thread, or expose it to whatever
+ *  collects metrics in production.  One instance may be shared by several Encrypters.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public class HistogramMetrics implements Metrics {
+
+    /**
+     *  The timings, indexed by Timer.
+     */
+    private final Histogram[] timers;
+
+    /**
+     *  The events, indexed by Counter.
+     */
+    private final AtomicLongArray counters = new AtomicLongArray(Metrics.Counter.values().length);
+
+    /**
+     *  The errors, by class.
+     */
+    private final ConcurrentMap<Class<? extends ServerosException>, LongAdder> errors
+        = new ConcurrentHashMap<Class<? extends ServerosException>, LongAdder>();
+
+    /**
+     *  Constructor.  Keeps Histogram.DEFAULT_PRECISION significant bits.
+     */
+    public HistogramMetrics() {
+        this(Histogram.DEFAULT_PRECISION);
+    }//HistogramMetrics()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param precision the number of significant bits each Histogram keeps.
+     */
+    public HistogramMetrics(int precision) {
+        Metrics.Timer[] t = Metrics.Timer.values();
+        this.timers = new Histogram[t.length];
+        for (int i = 0; i < t.length; i++)
+            this.timers[i] = new Histogram(precision);
+    }//HistogramMetrics(int)*/
+
+    /**
+     *  Start timing a step.
+     *
+     *  @return the current System.nanoTime().
+     */
+    @Override
+    public long start() {
+        return System.nanoTime();
+    }//start()*/
+
+    /**
+     *  Finish timing a step.
+     *
+     *  @param timer the step.
+     *  @param start what start() returned.
+     */
+    @Override
+    public void stop(Metrics.Timer timer, long start) {
+        this.timers[timer.ordinal()].record(System.nanoTime() - start);
+    }//stop(Metrics.Timer, long)*/
+
+    /**
+     *  Count an event.
+     *
+     *  @param counter the event.
+     */
+    @Override
+    public void increment(Metrics.Counter counter) {
+        this.counters.incrementAndGet(counter.ordinal());
+    }//increment(Metrics.Counter)*/
+
+    /**
+     *  Count an error.  Allocates only the first time a kind of error is seen.
+     *
+     *  @param error the error.
+     */
+    @Override
+    public void error(ServerosException error) {
+        LongAdder n = this.errors.get(error.getClass());
+        if (n == null)
+            n = this.errors.computeIfAbsent(error.getClass(), k -> new LongAdder());
+        n.increment();
+    }//error(ServerosException)*/
+
+    /**
+     *  Get the timings of a step.
+     *
+     *  @param timer the step.
+     *
+     *  @return the Histogram, in nanoseconds.  Live - it keeps recording.
+     */
+    public Histogram getHistogram(Metrics.Timer timer) {
+        return this.timers[timer.ordinal()];
+    }//getHistogram(Metrics.Timer)*/
+
+    /**
+     *  Get the number of times an event has happened.
+     *
+     *  @param counter the event.
+     *
+     *  @return the count.
+     */
+    public long getCount(Metrics.Counter counter) {
+        return this.counters.get(counter.ordinal());
+    }//getCount(Metrics.Counter)*/
+
+    /**
+     *  Get the number of times a kind of error has been thrown.
+     *
+     *  @param type the exact class of the error - subclasses are counted separately.
+     *
+     *  @return the count.
+     */
+    public long getErrorCount(Class<? extends ServerosException> type) {
+        LongAdder n = this.errors.get(type);
+        return n == null ? 0L : n.sum();
+    }//getErrorCount(Class)*/
+
+    /**
+     *  Get the number of times each kind of error has been thrown.
+     *
+     *  @return a copy of the counts, by class.
+     */
+    public Map<Class<? extends ServerosException>, Long> getErrorCounts() {
+        Map<Class<? extends ServerosException>, Long> copy = new HashMap<Class<? extends ServerosException>, Long>();
+        for (Map.Entry<Class<? extends ServerosException>, LongAdder> e : this.errors.entrySet())
+            copy.put(e.getKey(), e.getValue().sum());
+        return copy;
+    }//getErrorCounts()*/
+
+    /**
+     *  Forget everything recorded.
+     */
+    public void reset() {
+        for (Histogram h : this.timers)
+            h.reset();
+        for (int i = 0; i < this.counters.length(); i++)
+            this.counters.set(i, 0L);
+        this.errors.clear();
+    }//reset()*/
+}//HistogramMetrics*/
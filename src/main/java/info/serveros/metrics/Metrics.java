@@ -0,0 +1,148 @@
+package info.serveros.metrics;
+
+import info.serveros.exceptions.ServerosException;
+
+/**
+ *  Where an Encrypter reports how long its expensive steps take and what goes wrong.  Timings are
+ *  taken as a pair: start() before the step, stop() after it, so an implementation that doesn't
+ *  want the time never reads the clock.  Implementations must be thread safe, and should not
+ *  block or allocate on the recording path - they are called on every handshake.
+ *
+ *  @author Francis J.. Van Wetering IV
+ */
+public interface Metrics {
+
+    /**
+     *  Records nothing.  The default; start() doesn't read the clock, and every call is empty, so
+     *  once inlined it costs nothing.
+     */
+    Metrics NONE = new Metrics() {
+
+        /**
+         *  Don't start a timing.
+         *
+         *  @return zero.
+         */
+        @Override
+        public long start() {
+            return 0L;
+        }//start()*/
+
+        /**
+         *  Don't record a timing.
+         *
+         *  @param timer ignored.
+         *  @param start ignored.
+         */
+        @Override
+        public void stop(Timer timer, long start) {
+        }//stop(Timer, long)*/
+
+        /**
+         *  Don't count an event.
+         *
+         *  @param counter ignored.
+         */
+        @Override
+        public void increment(Counter counter) {
+        }//increment(Counter)*/
+
+        /**
+         *  Don't count an error.
+         *
+         *  @param error ignored.
+         */
+        @Override
+        public void error(ServerosException error) {
+        }//error(ServerosException)*/
+    };
+
+    /**
+     *  Start timing a step.
+     *
+     *  @return a token to hand to stop() - normally the current System.nanoTime().
+     */
+    long start();
+
+    /**
+     *  Finish timing a step.
+     *
+     *  @param timer the step.
+     *  @param start what start() returned.
+     */
+    void stop(Timer timer, long start);
+
+    /**
+     *  Count an event.
+     *
+     *  @param counter the event.
+     */
+    void increment(Counter counter);
+
+    /**
+     *  Count an error, before it's thrown to the caller.
+     *
+     *  @param error the error.  Its class tells one kind from another.
+     */
+    void error(ServerosException error);
+
+    /**
+     *  The timed steps.
+     */
+    enum Timer {
+        /**
+         *  Encrypting one time credentials with an RSA key.
+         */
+        rsa_wrap,
+
+        /**
+         *  Decrypting one time credentials with an RSA key.
+         */
+        rsa_unwrap,
+
+        /**
+         *  Signing a sealed message.
+         */
+        sign,
+
+        /**
+         *  Verifying the signature on a sealed message.
+         */
+        verify,
+
+        /**
+         *  Enciphering a message with one time credentials.
+         */
+        encipher,
+
+        /**
+         *  Deciphering a message with one time credentials.
+         */
+        decipher,
+
+        /**
+         *  Writing a message as JSON or CBOR.
+         */
+        encode,
+
+        /**
+         *  Reading a message from JSON or CBOR.
+         */
+        decode,
+
+        /**
+         *  Sending a request to the Master or a Provider and reading its response.
+         */
+        http_round_trip
+    }//Timer*/
+
+    /**
+     *  The counted events.
+     */
+    enum Counter {
+        /**
+         *  A request retried after the Master refused its Cipher or Hash.
+         */
+        negotiation_retry
+    }//Counter*/
+}//Metrics*/
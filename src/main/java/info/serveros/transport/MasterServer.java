@@ -0,0 +1,128 @@
+package info.serveros.transport;
+
+import info.serveros.ServerosMaster;
+import info.serveros.exceptions.MessageException;
+import info.serveros.exceptions.ServerosException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ *  A small, non-blocking HTTP/1.1 server for a ServerosMaster.  Answers
+ *  GET /authenticate?authRequest=... with the encrypted CredentialResponse, as JSON; failures - the
+ *  409 and 490 negotiation errors among them - are answered with the exception's status code and
+ *  JSON body.  Point a ServerosConsumer's masterLocation at host:port of getAddress().
+ */
+public class MasterServer extends NioHttpServer {
+
+    /**
+     *  The path requests are answered on.
+     */
+    public static final String PATH = "/authenticate";
+
+    /**
+     *  The query parameter holding the request.
+     */
+    private static final String PARAMETER = "authRequest=";
+
+    /**
+     *  The Master answering requests.
+     */
+    public final ServerosMaster master;
+
+    /**
+     *  Constructor.  Uses the defaults, and one worker per processor.
+     *
+     *  @param master the Master answering requests.
+     *  @param address where to listen.  Port 0 picks a free port.
+     *
+     *  @throws IOException if the address cannot be bound.
+     */
+    public MasterServer(ServerosMaster master, InetSocketAddress address) throws IOException {
+        this(master, address, null, NioHttpServer.DEFAULT_MAX_REQUEST_SIZE, NioHttpServer.DEFAULT_IDLE_TIMEOUT);
+    }//MasterServer(ServerosMaster, InetSocketAddress)*/
+
+    /**
+     *  Constructor.  The server doesn't accept connections until it's started.
+     *
+     *  @param master the Master answering requests.
+     *  @param address where to listen.  Port 0 picks a free port.
+     *  @param workers where to answer requests, or null for one worker per processor.  A pool
+     *      supplied here is not shut down when the server is closed.
+     *  @param maxRequestSize the limit on the size of a request body, in bytes.
+     *  @param idleTimeout how long an idle connection is kept, in milliseconds.
+     *
+     *  @throws IOException if the address cannot be bound.
+     */
+    public MasterServer(ServerosMaster master, InetSocketAddress address, Executor workers
+                , int maxRequestSize, long idleTimeout
+            ) throws IOException {
+        super("serveros-master", address, workers, maxRequestSize, idleTimeout);
+        this.master = master;
+    }//MasterServer(ServerosMaster, InetSocketAddress, Executor, int, long)*/
+
+    /**
+     *  Start accepting connections.
+     *
+     *  @return this server.
+     */
+    @Override
+    public MasterServer start() {
+        super.start();
+        return this;
+    }//start()*/
+
+    /**
+     *  Decide whether a method is accepted.
+     *
+     *  @param method the request method.
+     *
+     *  @return true for GET.
+     */
+    @Override
+    protected boolean accepts(String method) {
+        return "GET".equals(method);
+    }//accepts(String)*/
+
+    /**
+     *  Answer a CredentialRequest.  Runs on a worker.
+     *
+     *  @param method the request method.
+     *  @param target the request target - the path and query.
+     *  @param body the request body.
+     *  @param keepAlive whether the connection stays open afterwards.
+     *
+     *  @return the complete HTTP response.
+     */
+    @Override
+    protected byte[] answer(String method, String target, byte[] body, boolean keepAlive) {
+        int q = target.indexOf('?');
+        if (!MasterServer.PATH.equals(q < 0 ? target : target.substring(0, q)))
+            return NioHttpServer.error(new ServerosException("Not found.", 404), keepAlive);
+        String authRequest = null;
+        if (q >= 0) {
+            for (String param: target.substring(q + 1).split("&")) {
+                if (param.startsWith(MasterServer.PARAMETER)) {
+                    authRequest = param.substring(MasterServer.PARAMETER.length());
+                    break;
+                }
+            }
+        }
+        if (authRequest == null)
+            return NioHttpServer.error(new ServerosException("Missing authRequest.", 400), keepAlive);
+        try {
+            authRequest = URLDecoder.decode(authRequest, StandardCharsets.UTF_8);
+            return NioHttpServer.response(200, this.master.authenticate(authRequest).toJSONBytes(), keepAlive);
+        } catch (ServerosException e) {
+            return NioHttpServer.error(e, keepAlive);
+        } catch (java.security.GeneralSecurityException e) {
+            return NioHttpServer.error(new MessageException("The authRequest could not be decrypted.", e), keepAlive);
+        } catch (IllegalArgumentException e) {
+            return NioHttpServer.error(new ServerosException("Malformed authRequest.", 400, e), keepAlive);
+        } catch (RuntimeException e) {
+            return NioHttpServer.error(new ServerosException(e), keepAlive);
+        }
+    }//answer(String, String, byte[], boolean)*/
+}//MasterServer*/
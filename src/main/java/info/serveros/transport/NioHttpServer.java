@@ -0,0 +1,744 @@
+package info.serveros.transport;
+
+import info.serveros.JSONable;
+import info.serveros.exceptions.ServerosException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.stream.JsonGenerator;
+
+/**
+ *  A small, non-blocking HTTP/1.1 server for the Serveros JSON endpoints.  A single selector thread
+ *  does all of the network I/O, while requests are answered - decrypted, verified and encrypted -
+ *  on a separate pool of workers, so idle keep-alive connections and slow clients never hold a
+ *  thread.  Subclasses decide which methods they accept and how to answer.
+ */
+public abstract class NioHttpServer implements java.io.Closeable {
+
+    /**
+     *  Default limit on the size of a request body, in bytes.
+     */
+    public static final int DEFAULT_MAX_REQUEST_SIZE = 64 * 1024;
+
+    /**
+     *  Default time an idle connection is kept, in milliseconds.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     *  The limit on the size of a request head, in bytes.
+     */
+    private static final int MAX_HEAD_SIZE = 8192;
+
+    /**
+     *  The interim response to a request that expects one.
+     */
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     *  The limit on the size of a request body, in bytes.
+     */
+    public final int maxRequestSize;
+
+    /**
+     *  How long an idle connection is kept, in milliseconds.
+     */
+    public final long idleTimeout;
+
+    /**
+     *  The listening socket.
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     *  Watches the listening socket and every connection.
+     */
+    private final Selector selector;
+
+    /**
+     *  Where requests are answered.
+     */
+    private final Executor workers;
+
+    /**
+     *  The workers, if this server made them and so must shut them down.
+     */
+    private final ExecutorService ownWorkers;
+
+    /**
+     *  Connections whose responses the workers have finished, waiting for the selector thread.
+     */
+    private final Queue<Connection> finished = new ConcurrentLinkedQueue<>();
+
+    /**
+     *  The selector thread.
+     */
+    private final Thread selectorThread;
+
+    /**
+     *  True once this server has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     *  Constructor.  The server doesn't accept connections until it's started.
+     *
+     *  @param name the prefix for the server's thread names.
+     *  @param address where to listen.  Port 0 picks a free port.
+     *  @param workers where to answer requests, or null for one worker per processor.  A pool
+     *      supplied here is not shut down when the server is closed.
+     *  @param maxRequestSize the limit on the size of a request body, in bytes.
+     *  @param idleTimeout how long an idle connection is kept, in milliseconds.
+     *
+     *  @throws IOException if the address cannot be bound.
+     */
+    protected NioHttpServer(String name, InetSocketAddress address, Executor workers
+                , int maxRequestSize, long idleTimeout
+            ) throws IOException {
+        if (maxRequestSize < 1)
+            throw new IllegalArgumentException("Must allow a request body of at least one byte.");
+        this.maxRequestSize = maxRequestSize;
+        this.idleTimeout = idleTimeout;
+        if (workers == null) {
+            final AtomicInteger count = new AtomicInteger();
+            this.ownWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread(r, name + "-worker-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.workers = this.ownWorkers;
+        } else {
+            this.ownWorkers = null;
+            this.workers = workers;
+        }
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        try {
+            this.server.bind(address);
+            this.server.configureBlocking(false);
+            this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            this.shutdown();
+            throw e;
+        }
+        this.selectorThread = new Thread(this::run, name + "-selector");
+    }//NioHttpServer(String, InetSocketAddress, Executor, int, long)*/
+
+    /**
+     *  Start accepting connections.
+     *
+     *  @return this server.
+     */
+    public NioHttpServer start() {
+        this.selectorThread.start();
+        return this;
+    }//start()*/
+
+    /**
+     *  Get the address the server is listening on.
+     *
+     *  @return the bound address - useful when the port was picked automatically.
+     *
+     *  @throws IOException if the server has been closed.
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) this.server.getLocalAddress();
+    }//getAddress()*/
+
+    /**
+     *  Stop accepting connections, and close every open one.  Presentations already with the
+     *  workers are finished, but their responses are dropped.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        if (this.selectorThread.getState() == Thread.State.NEW) {
+            this.shutdown();
+            return;
+        }
+        this.selector.wakeup();
+        if (Thread.currentThread() != this.selectorThread) {
+            try {
+                this.selectorThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }//close()*/
+
+    /**
+     *  The selector loop.
+     */
+    private void run() {
+        long period = Math.max(1, Math.min(1000, this.idleTimeout / 2));
+        long nextSweep = System.currentTimeMillis() + period;
+        try {
+            while (!this.closed) {
+                this.selector.select(period);
+                Connection c;
+                while ((c = this.finished.poll()) != null)
+                    c.respond();
+                Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        this.accept();
+                    else
+                        ((Connection) key.attachment()).ready(key);
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    this.evictIdle(now - this.idleTimeout);
+                    nextSweep = now + period;
+                }
+            }
+        } catch (IOException e) {
+            //The selector itself has failed; there's nothing left to serve with.
+        } finally {
+            this.shutdown();
+        }
+    }//run()*/
+
+    /**
+     *  Accept every pending connection.
+     *
+     *  @throws IOException if the listening socket fails.
+     */
+    private void accept() throws IOException {
+        SocketChannel s;
+        while ((s = this.server.accept()) != null) {
+            try {
+                s.configureBlocking(false);
+                s.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection c = new Connection(s);
+                c.key = s.register(this.selector, SelectionKey.OP_READ, c);
+            } catch (IOException e) {
+                NioHttpServer.closeQuietly(s);
+            }
+        }
+    }//accept()*/
+
+    /**
+     *  Close idle connections last active before the cutoff.  Connections waiting on a worker
+     *  aren't idle.
+     *
+     *  @param cutoff the time, in milliseconds since the epoch.
+     */
+    private void evictIdle(long cutoff) {
+        for (SelectionKey key: this.selector.keys()) {
+            Object c = key.attachment();
+            if (c instanceof Connection && !((Connection) c).busy && ((Connection) c).lastActive < cutoff)
+                ((Connection) c).close();
+        }
+    }//evictIdle(long)*/
+
+    /**
+     *  Release the selector, the listening socket, every connection and any workers this server made.
+     */
+    private void shutdown() {
+        if (this.selector.isOpen()) {
+            for (SelectionKey key: this.selector.keys())
+                NioHttpServer.closeQuietly(key.channel());
+            NioHttpServer.closeQuietly(this.selector);
+        }
+        NioHttpServer.closeQuietly(this.server);
+        if (this.ownWorkers != null)
+            this.ownWorkers.shutdown();
+    }//shutdown()*/
+
+    /**
+     *  Decide whether a method is accepted.  Anything else is refused with a 405.
+     *
+     *  @param method the request method.
+     *
+     *  @return true if requests with that method should be answered.
+     */
+    protected abstract boolean accepts(String method);
+
+    /**
+     *  Answer a request.  Runs on a worker.
+     *
+     *  @param method the request method.
+     *  @param target the request target - the path and query.
+     *  @param body the request body.
+     *  @param keepAlive whether the connection stays open afterwards.
+     *
+     *  @return the complete HTTP response - usually from response or error.
+     */
+    protected abstract byte[] answer(String method, String target, byte[] body, boolean keepAlive);
+
+    /**
+     *  Build an error response.
+     *
+     *  @param e the error.
+     *  @param keepAlive whether the connection stays open afterwards.
+     *
+     *  @return the complete HTTP response, with the error as its JSON body.
+     */
+    protected static byte[] error(ServerosException e, boolean keepAlive) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream(128);
+        JsonGenerator g = JSONable.getGeneratorFactory().createGenerator(b, StandardCharsets.UTF_8);
+        e.toJson(g, null);
+        g.close();
+        return NioHttpServer.response(e.statusCode, b.toByteArray(), keepAlive);
+    }//error(ServerosException, boolean)*/
+
+    /**
+     *  Build a response.
+     *
+     *  @param status the status code.
+     *  @param body the JSON body.
+     *  @param keepAlive whether the connection stays open afterwards.
+     *
+     *  @return the complete HTTP response.
+     */
+    protected static byte[] response(int status, byte[] body, boolean keepAlive) {
+        byte[] head = new StringBuilder(128)
+            .append("HTTP/1.1 ").append(status).append(' ').append(NioHttpServer.reason(status)).append("\r\n")
+            .append("Content-Type: application/json\r\n")
+            .append("Content-Length: ").append(body.length).append("\r\n")
+            .append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n")
+            .append("\r\n")
+            .toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] r = new byte[head.length + body.length];
+        System.arraycopy(head, 0, r, 0, head.length);
+        System.arraycopy(body, 0, r, head.length, body.length);
+        return r;
+    }//response(int, byte[], boolean)*/
+
+    /**
+     *  Get the reason phrase for a status code.
+     *
+     *  @param status the status code.
+     *
+     *  @return the reason phrase.
+     */
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 411: return "Length Required";
+            case 413: return "Payload Too Large";
+            case 422: return "Unprocessable Entity";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 503: return "Service Unavailable";
+            default: return "Status " + status;
+        }
+    }//reason(int)*/
+
+    /**
+     *  Close something, quietly.
+     *
+     *  @param c the thing to close.
+     */
+    private static void closeQuietly(java.io.Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            //Nothing to be done.
+        }
+    }//closeQuietly(Closeable)*/
+
+    /**
+     *  A single HTTP/1.1 connection.  Only ever touched by the selector thread, apart from the
+     *  response, which is handed over through the finished queue.  One request is answered at a
+     *  time; anything pipelined behind it waits in the buffer.
+     */
+    private class Connection {
+
+        /**
+         *  The socket.
+         */
+        private final SocketChannel channel;
+
+        /**
+         *  The socket's registration with the selector.
+         */
+        private SelectionKey key;
+
+        /**
+         *  What has been read and not yet consumed.
+         */
+        private ByteBuffer in = ByteBuffer.allocate(4096);
+
+        /**
+         *  What is being written, or null.
+         */
+        private ByteBuffer out;
+
+        /**
+         *  True if what's being written is only the interim 100 Continue.
+         */
+        private boolean interim;
+
+        /**
+         *  The current request's method.
+         */
+        private String method;
+
+        /**
+         *  The current request's target.
+         */
+        private String target;
+
+        /**
+         *  The length of the current request's head, or -1 if it hasn't all arrived.
+         */
+        private int headLength = -1;
+
+        /**
+         *  The length of the current request's body.
+         */
+        private int contentLength;
+
+        /**
+         *  Whether the connection stays open after the current request.
+         */
+        private boolean keepAlive;
+
+        /**
+         *  True while a worker is answering the current request.
+         */
+        private boolean busy;
+
+        /**
+         *  The response from the worker.
+         */
+        private byte[] response;
+
+        /**
+         *  When anything last happened on this connection.
+         */
+        private long lastActive = System.currentTimeMillis();
+
+        /**
+         *  Constructor.
+         *
+         *  @param channel the accepted socket.
+         */
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }//Connection(SocketChannel)*/
+
+        /**
+         *  Handle whatever the selector has found ready.
+         *
+         *  @param key the selected key.
+         */
+        private void ready(SelectionKey key) {
+            try {
+                if (key.isReadable())
+                    this.read();
+                if (key.isValid() && key.isWritable())
+                    this.write();
+            } catch (IOException | java.nio.channels.CancelledKeyException e) {
+                this.close();
+            }
+        }//ready(SelectionKey)*/
+
+        /**
+         *  Read what's available, and act on it.
+         *
+         *  @throws IOException if the socket fails.
+         */
+        private void read() throws IOException {
+            if (!this.in.hasRemaining() && !this.grow(this.in.capacity() + 1))
+                return;
+            int n = this.channel.read(this.in);
+            if (n < 0) {
+                this.close();
+                return;
+            }
+            this.lastActive = System.currentTimeMillis();
+            this.process();
+        }//read()*/
+
+        /**
+         *  Parse as much of the current request as has arrived, and hand it to a worker once it's
+         *  complete.
+         *
+         *  @throws IOException if the socket fails.
+         */
+        private void process() throws IOException {
+            if (this.busy || (this.out != null && !this.interim))
+                return;
+            if (this.headLength < 0) {
+                int end = this.findHeadEnd();
+                if (end < 0) {
+                    if (this.in.position() >= NioHttpServer.MAX_HEAD_SIZE)
+                        this.fail(431, "Request head too large.");
+                    return;
+                }
+                if (!this.parseHead(end))
+                    return;
+            }
+            int total = this.headLength + this.contentLength;
+            if (this.in.position() < total)
+                return;
+            byte[] body = java.util.Arrays.copyOfRange(this.in.array(), this.headLength, total);
+            this.in.flip();
+            this.in.position(total);
+            this.in.compact();
+            this.headLength = -1;
+            this.busy = true;
+            this.updateInterest();
+            final boolean keepAlive = this.keepAlive;
+            final String method = this.method;
+            final String target = this.target;
+            try {
+                NioHttpServer.this.workers.execute(() -> {
+                    byte[] r = null;
+                    try {
+                        r = NioHttpServer.this.answer(method, target, body, keepAlive);
+                    } catch (Throwable t) {
+                        r = NioHttpServer.error(new ServerosException("Internal server error.", 500, t), keepAlive);
+                    } finally {
+                        //  Always hand the connection back, or it stays busy and never reads again.
+                        this.response = r != null ? r : NioHttpServer.response(500, new byte[0], keepAlive);
+                        NioHttpServer.this.finished.add(this);
+                        NioHttpServer.this.selector.wakeup();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                this.busy = false;
+                this.fail(503, "No worker available.");
+            }
+        }//process()*/
+
+        /**
+         *  Find the blank line that ends the request head.
+         *
+         *  @return the length of the head, including the blank line, or -1 if it hasn't arrived.
+         */
+        private int findHeadEnd() {
+            byte[] b = this.in.array();
+            int limit = this.in.position();
+            for (int i = 3; i < limit; i++) {
+                if (b[i] == '\n' && b[i - 1] == '\r' && b[i - 2] == '\n' && b[i - 3] == '\r')
+                    return i + 1;
+            }
+            return -1;
+        }//findHeadEnd()*/
+
+        /**
+         *  Parse the request head.
+         *
+         *  @param end the length of the head.
+         *
+         *  @return true if the request can be answered; false if it has already been refused.
+         *
+         *  @throws IOException if the socket fails.
+         */
+        private boolean parseHead(int end) throws IOException {
+            String[] lines = new String(this.in.array(), 0, end - 4, StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] request = lines[0].split(" ");
+            if (request.length != 3 || !request[2].startsWith("HTTP/1.")) {
+                this.fail(400, "Malformed request line.");
+                return false;
+            }
+            boolean http10 = "HTTP/1.0".equals(request[2]);
+            long length = -1;
+            boolean expectContinue = false;
+            String connection = null;
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon < 0)
+                    continue;
+                String name = lines[i].substring(0, colon).trim();
+                String value = lines[i].substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    try {
+                        long l = Long.parseLong(value);
+                        if (l < 0 || (length >= 0 && l != length))
+                            throw new NumberFormatException(value);
+                        length = l;
+                    } catch (NumberFormatException e) {
+                        this.fail(400, "Malformed Content-Length.");
+                        return false;
+                    }
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    this.fail(411, "Chunked requests are not supported.");
+                    return false;
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    connection = value.toLowerCase(Locale.ROOT);
+                } else if (name.equalsIgnoreCase("Expect")) {
+                    expectContinue = value.equalsIgnoreCase("100-continue");
+                }
+            }
+            if (!NioHttpServer.this.accepts(request[0])) {
+                this.fail(405, "Method not allowed.");
+                return false;
+            }
+            if (length < 0) {
+                if ("POST".equals(request[0]) || "PUT".equals(request[0])) {
+                    this.fail(411, "A Content-Length is required.");
+                    return false;
+                }
+                length = 0;
+            }
+            if (length > NioHttpServer.this.maxRequestSize) {
+                this.fail(413, "Request body too large.");
+                return false;
+            }
+            this.keepAlive = http10
+                ? connection != null && connection.contains("keep-alive")
+                : connection == null || !connection.contains("close");
+            this.method = request[0];
+            this.target = request[1];
+            this.headLength = end;
+            this.contentLength = (int) length;
+            if (!this.grow(end + this.contentLength))
+                return false;
+            if (expectContinue && this.in.position() < end + this.contentLength && this.out == null) {
+                this.interim = true;
+                this.out = ByteBuffer.wrap(NioHttpServer.CONTINUE);
+                this.write();
+            }
+            return true;
+        }//parseHead(int)*/
+
+        /**
+         *  Make sure the read buffer can hold at least so many bytes.
+         *
+         *  @param needed the bytes needed.
+         *
+         *  @return true if there's room; false if the request has been refused as too large.
+         *
+         *  @throws IOException if the socket fails.
+         */
+        private boolean grow(int needed) throws IOException {
+            if (needed <= this.in.capacity())
+                return true;
+            int max = NioHttpServer.MAX_HEAD_SIZE + NioHttpServer.this.maxRequestSize;
+            if (needed > max) {
+                this.fail(413, "Request too large.");
+                return false;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(max, Math.max(needed, this.in.capacity() * 2)));
+            this.in.flip();
+            bigger.put(this.in);
+            this.in = bigger;
+            return true;
+        }//grow(int)*/
+
+        /**
+         *  Refuse the current request, and close the connection once the refusal is written.
+         *
+         *  @param status the status code.
+         *  @param message why.
+         *
+         *  @throws IOException if the socket fails.
+         */
+        private void fail(int status, String message) throws IOException {
+            this.keepAlive = false;
+            this.send(NioHttpServer.error(new ServerosException(message, status), false));
+        }//fail(int, String)*/
+
+        /**
+         *  Start writing the response the worker left.  Runs on the selector thread.
+         */
+        private void respond() {
+            this.busy = false;
+            if (!this.channel.isOpen())
+                return;
+            byte[] r = this.response;
+            this.response = null;
+            try {
+                this.send(r);
+            } catch (IOException | java.nio.channels.CancelledKeyException e) {
+                this.close();
+            }
+        }//respond()*/
+
+        /**
+         *  Start writing a final response, behind whatever's left of an interim one.
+         *
+         *  @param r the complete HTTP response.
+         *
+         *  @throws IOException if the socket fails.
+         */
+        private void send(byte[] r) throws IOException {
+            if (this.out != null && this.out.hasRemaining()) {
+                ByteBuffer both = ByteBuffer.allocate(this.out.remaining() + r.length);
+                both.put(this.out).put(r).flip();
+                this.out = both;
+            } else {
+                this.out = ByteBuffer.wrap(r);
+            }
+            this.interim = false;
+            this.write();
+        }//send(byte[])*/
+
+        /**
+         *  Write as much of the pending output as the socket will take.
+         *
+         *  @throws IOException if the socket fails.
+         */
+        private void write() throws IOException {
+            this.channel.write(this.out);
+            this.lastActive = System.currentTimeMillis();
+            if (!this.out.hasRemaining()) {
+                this.out = null;
+                if (this.interim) {
+                    this.interim = false;
+                } else if (!this.keepAlive) {
+                    this.close();
+                    return;
+                } else {
+                    this.updateInterest();
+                    //Anything pipelined behind the request is already in the buffer.
+                    this.process();
+                    return;
+                }
+            }
+            this.updateInterest();
+        }//write()*/
+
+        /**
+         *  Tell the selector what this connection is waiting for.
+         */
+        private void updateInterest() {
+            if (!this.key.isValid())
+                return;
+            int ops = 0;
+            if (this.out != null)
+                ops |= SelectionKey.OP_WRITE;
+            if (!this.busy && (this.out == null || this.interim))
+                ops |= SelectionKey.OP_READ;
+            this.key.interestOps(ops);
+        }//updateInterest()*/
+
+        /**
+         *  Close the connection.
+         */
+        private void close() {
+            if (this.key != null)
+                this.key.cancel();
+            NioHttpServer.closeQuietly(this.channel);
+        }//close()*/
+    }//Connection*/
+}//NioHttpServer*/
@@ -0,0 +1,698 @@
+package info.serveros.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ *  A blocking HTTP/1.1 Transport that keeps connections alive between requests.  Each host gets a
+ *  bounded pool of connections; connections left idle too long are closed in the background.
+ *  Opt in with ServerosConsumer.setTransport: it connects directly, ignoring the JDK's proxy
+ *  settings, and doesn't follow redirects, which the default UrlConnectionTransport does.
+ */
+public class PooledHttpTransport implements Transport, java.io.Closeable {
+
+    /**
+     *  Default bound on connections to any one host.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    /**
+     *  Default time an idle connection is kept, in milliseconds.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     *  Default connect and read timeout, in milliseconds.
+     */
+    public static final int DEFAULT_TIMEOUT = 30000;
+
+    /**
+     *  Runs the idle sweeps for every PooledHttpTransport.
+     */
+    private static final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "serveros-transport-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     *  The most connections open to any one host.
+     */
+    public final int maxConnectionsPerHost;
+
+    /**
+     *  How long an idle connection is kept, in milliseconds.
+     */
+    public final long idleTimeout;
+
+    /**
+     *  Connect and read timeout, in milliseconds.
+     */
+    public final int timeout;
+
+    /**
+     *  The pools, by scheme, host and port.
+     */
+    private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<>();
+
+    /**
+     *  The scheduled idle sweep.
+     */
+    private final ScheduledFuture<?> sweep;
+
+    /**
+     *  True once this transport has been closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     *  Constructor.  Uses the defaults.
+     */
+    public PooledHttpTransport() {
+        this(PooledHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST, PooledHttpTransport.DEFAULT_IDLE_TIMEOUT
+            , PooledHttpTransport.DEFAULT_TIMEOUT
+        );
+    }//PooledHttpTransport()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param maxConnectionsPerHost the most connections open to any one host.  Requests beyond
+     *      that wait for a connection to come free.
+     *  @param idleTimeout how long an idle connection is kept, in milliseconds.
+     *  @param timeout connect and read timeout, in milliseconds.
+     */
+    public PooledHttpTransport(int maxConnectionsPerHost, long idleTimeout, int timeout) {
+        if (maxConnectionsPerHost < 1)
+            throw new IllegalArgumentException("Must allow at least one connection per host.");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeout = idleTimeout;
+        this.timeout = timeout;
+        long period = Math.max(idleTimeout / 2, 1);
+        Sweep task = new Sweep(this);
+        this.sweep = PooledHttpTransport.sweeper.scheduleAtFixedRate(
+            task, period, period, TimeUnit.MILLISECONDS
+        );
+        task.scheduled = this.sweep;
+    }//PooledHttpTransport(int, long, int)*/
+
+    /**
+     *  Perform a GET.
+     *
+     *  @param url the absolute URL to get.
+     *
+     *  @return the response, whatever its status code.
+     *
+     *  @throws IOException if the request cannot be made, or the response cannot be read.
+     */
+    @Override
+    public Response get(String url) throws IOException {
+        return this.send("GET", url, null, null);
+    }//get(String)*/
+
+    /**
+     *  Perform a POST.
+     *
+     *  @param url the absolute URL to post to.
+     *  @param contentType the type of the request body.
+     *  @param body the request body.
+     *
+     *  @return the response, whatever its status code.
+     *
+     *  @throws IOException if the request cannot be made, or the response cannot be read.
+     */
+    @Override
+    public Response post(String url, String contentType, byte[] body) throws IOException {
+        return this.send("POST", url, contentType, body);
+    }//post(String, String, byte[])*/
+
+    /**
+     *  Close every idle connection that has outstayed the idle timeout.
+     */
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - this.idleTimeout;
+        for (HostPool pool: this.pools.values())
+            pool.evict(cutoff);
+    }//evictIdle()*/
+
+    /**
+     *  Close every idle connection, and stop sweeping.  Connections in use are closed as they're returned.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.sweep.cancel(false);
+        for (HostPool pool: this.pools.values())
+            pool.evict(Long.MAX_VALUE);
+    }//close()*/
+
+    /**
+     *  Send a request, on a pooled connection if one is available.  A pooled connection the server
+     *  has since closed is found out by an end of stream or a reset before any of the response
+     *  arrives; in that case the request is sent again on a new connection.  Nothing else is
+     *  retried - after a timeout, the server may well have acted on the request.
+     *
+     *  @param method the HTTP method.
+     *  @param url the absolute URL.
+     *  @param contentType the type of the body, or null.
+     *  @param body the request body, or null.
+     *
+     *  @return the response.
+     *
+     *  @throws IOException if the request cannot be made, or the response cannot be read.
+     */
+    private Response send(String method, String url, String contentType, byte[] body) throws IOException {
+        URI uri = URI.create(url);
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+        boolean secure = "https".equals(scheme);
+        if (!secure && !"http".equals(scheme))
+            throw new IOException("Unsupported scheme: " + scheme);
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        String host = uri.getHost();
+        HostPool pool = this.pools.computeIfAbsent(scheme + "://" + host + ":" + port
+            , k -> new HostPool(host, port, secure)
+        );
+        String target = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null)
+            target += "?" + uri.getRawQuery();
+        String hostHeader = uri.getPort() == -1 ? host : host + ":" + port;
+
+        pool.acquire();
+        try {
+            Connection conn = pool.poll();
+            boolean reused = conn != null;
+            if (!reused)
+                conn = pool.open();
+            while (true) {
+                try {
+                    Response resp = conn.exchange(method, target, hostHeader, contentType, body);
+                    if (conn.reusable)
+                        pool.offer(conn);
+                    else
+                        conn.close();
+                    return resp;
+                } catch (IOException e) {
+                    conn.close();
+                    if (!reused || conn.responseStarted || !PooledHttpTransport.isClosedByPeer(e))
+                        throw e;
+                    //The server closed an idle connection on us.  Try a fresh one.
+                    reused = false;
+                    conn = pool.open();
+                } catch (RuntimeException | Error e) {
+                    conn.close();
+                    throw e;
+                }
+            }
+        } finally {
+            pool.release();
+        }
+    }//send(String, String, String, byte[])*/
+
+    /**
+     *  Decide whether a failure means the server had closed the connection.
+     *
+     *  @param e the failure.
+     *
+     *  @return true for an end of stream or a reset - never for a timeout.
+     */
+    private static boolean isClosedByPeer(IOException e) {
+        return e instanceof EOFException || e instanceof SocketException;
+    }//isClosedByPeer(IOException)*/
+
+    /**
+     *  Parse a number from the response head.
+     *
+     *  @param value the text.
+     *  @param radix the radix.
+     *  @param what what the number is, for the error message.
+     *
+     *  @return the number.
+     *
+     *  @throws IOException if the text is not a non-negative number.
+     */
+    private static long parseNumber(String value, int radix, String what) throws IOException {
+        try {
+            long n = Long.parseLong(value, radix);
+            if (n < 0)
+                throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed " + what + ": " + value, e);
+        }
+    }//parseNumber(String, int, String)*/
+
+    /**
+     *  The idle sweep for one transport.  Holds the transport weakly, so one dropped without being
+     *  closed can still be collected - the sweep cancels itself once it's gone.
+     */
+    private static final class Sweep implements Runnable {
+
+        /**
+         *  The transport to sweep.
+         */
+        private final WeakReference<PooledHttpTransport> transport;
+
+        /**
+         *  This sweep, as scheduled.
+         */
+        private volatile ScheduledFuture<?> scheduled;
+
+        /**
+         *  Constructor.
+         *
+         *  @param transport the transport to sweep.
+         */
+        private Sweep(PooledHttpTransport transport) {
+            this.transport = new WeakReference<PooledHttpTransport>(transport);
+        }//Sweep(PooledHttpTransport)*/
+
+        /**
+         *  Sweep the transport, or stop sweeping if it has been collected.
+         */
+        @Override
+        public void run() {
+            PooledHttpTransport t = this.transport.get();
+            if (t != null) {
+                t.evictIdle();
+                return;
+            }
+            ScheduledFuture<?> f = this.scheduled;
+            if (f != null)
+                f.cancel(false);
+        }//run()*/
+    }//Sweep*/
+
+    /**
+     *  The connections to one host.
+     */
+    private class HostPool {
+
+        /**
+         *  The host.
+         */
+        private final String host;
+
+        /**
+         *  The port.
+         */
+        private final int port;
+
+        /**
+         *  True for TLS.
+         */
+        private final boolean secure;
+
+        /**
+         *  One permit per connection allowed.
+         */
+        private final Semaphore permits = new Semaphore(PooledHttpTransport.this.maxConnectionsPerHost, true);
+
+        /**
+         *  The idle connections, most recently used first.
+         */
+        private final ArrayDeque<Connection> idle = new ArrayDeque<>();
+
+        /**
+         *  Constructor.
+         *
+         *  @param host the host.
+         *  @param port the port.
+         *  @param secure true for TLS.
+         */
+        private HostPool(String host, int port, boolean secure) {
+            this.host = host;
+            this.port = port;
+            this.secure = secure;
+        }//HostPool(String, int, boolean)*/
+
+        /**
+         *  Wait for the right to use a connection.
+         *
+         *  @throws InterruptedIOException if interrupted while waiting.
+         */
+        private void acquire() throws InterruptedIOException {
+            try {
+                this.permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (InterruptedIOException) new InterruptedIOException("Interrupted waiting for a connection.").initCause(e);
+            }
+        }//acquire()*/
+
+        /**
+         *  Give up the right to use a connection.
+         */
+        private void release() {
+            this.permits.release();
+        }//release()*/
+
+        /**
+         *  Take the most recently used idle connection, if it's still fresh.
+         *
+         *  @return an idle connection, or null if there isn't one.
+         */
+        private synchronized Connection poll() {
+            long cutoff = System.currentTimeMillis() - PooledHttpTransport.this.idleTimeout;
+            Connection c;
+            while ((c = this.idle.pollFirst()) != null) {
+                if (c.lastUsed > cutoff)
+                    return c;
+                c.close();
+            }
+            return null;
+        }//poll()*/
+
+        /**
+         *  Return a connection to the pool.
+         *
+         *  @param c the connection, ready for another request.
+         */
+        private void offer(Connection c) {
+            c.lastUsed = System.currentTimeMillis();
+            synchronized (this) {
+                if (!PooledHttpTransport.this.closed) {
+                    this.idle.offerFirst(c);
+                    return;
+                }
+            }
+            c.close();
+        }//offer(Connection)*/
+
+        /**
+         *  Close idle connections last used before the cutoff.
+         *
+         *  @param cutoff the time, in milliseconds since the epoch.
+         */
+        private synchronized void evict(long cutoff) {
+            Iterator<Connection> i = this.idle.descendingIterator();
+            while (i.hasNext()) {
+                Connection c = i.next();
+                if (c.lastUsed > cutoff)
+                    break;
+                i.remove();
+                c.close();
+            }
+        }//evict(long)*/
+
+        /**
+         *  Open a new connection.
+         *
+         *  @return a connected connection.
+         *
+         *  @throws IOException if the connection cannot be made.
+         */
+        private Connection open() throws IOException {
+            int t = PooledHttpTransport.this.timeout;
+            Socket s = new Socket();
+            try {
+                s.setTcpNoDelay(true);
+                s.setKeepAlive(true);
+                s.connect(new InetSocketAddress(this.host, this.port), t);
+                s.setSoTimeout(t);
+                if (this.secure) {
+                    SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                        .createSocket(s, this.host, this.port, true);
+                    SSLParameters params = ssl.getSSLParameters();
+                    params.setEndpointIdentificationAlgorithm("HTTPS");
+                    ssl.setSSLParameters(params);
+                    ssl.startHandshake();
+                    s = ssl;
+                }
+                return new Connection(s);
+            } catch (IOException e) {
+                s.close();
+                throw e;
+            }
+        }//open()*/
+    }//HostPool*/
+
+    /**
+     *  A single HTTP/1.1 connection.
+     */
+    private static class Connection {
+
+        /**
+         *  The socket.
+         */
+        private final Socket socket;
+
+        /**
+         *  Buffered input from the socket.
+         */
+        private final InputStream in;
+
+        /**
+         *  Buffered output to the socket.
+         */
+        private final OutputStream out;
+
+        /**
+         *  When this connection was last returned to the pool.
+         */
+        private long lastUsed;
+
+        /**
+         *  False once the server has said it will close the connection.
+         */
+        private boolean reusable = true;
+
+        /**
+         *  True once any of the current response has arrived.
+         */
+        private boolean responseStarted;
+
+        /**
+         *  Constructor.
+         *
+         *  @param socket a connected socket.
+         *
+         *  @throws IOException if the socket's streams cannot be opened.
+         */
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }//Connection(Socket)*/
+
+        /**
+         *  Send a request and read the response.
+         *
+         *  @param method the HTTP method.
+         *  @param target the path and query.
+         *  @param host the Host header.
+         *  @param contentType the type of the body, or null.
+         *  @param body the request body, or null.
+         *
+         *  @return the response.
+         *
+         *  @throws IOException if the request cannot be sent or the response cannot be read.
+         */
+        private Response exchange(String method, String target, String host, String contentType, byte[] body)
+                    throws IOException
+                {
+            this.responseStarted = false;
+            StringBuilder head = new StringBuilder(128 + target.length())
+                .append(method).append(' ').append(target).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append("\r\n")
+                .append("Connection: keep-alive\r\n")
+                .append("Accept: application/json\r\n");
+            if (body != null) {
+                head.append("Content-Type: ").append(contentType).append("\r\n")
+                    .append("Content-Length: ").append(body.length).append("\r\n");
+            }
+            head.append("\r\n");
+            this.out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (body != null)
+                this.out.write(body);
+            this.out.flush();
+
+            //A connection the server closed while idle ends, or is reset, before the first byte.
+            this.in.mark(1);
+            if (this.in.read() == -1)
+                throw new EOFException("Connection closed before the response.");
+            this.in.reset();
+            this.responseStarted = true;
+            String[] status;
+            int code;
+            while (true) {
+                String statusLine = this.readLine();
+                status = statusLine.split(" ", 3);
+                if (status.length < 2 || !status[0].startsWith("HTTP/"))
+                    throw new IOException("Malformed status line: " + statusLine);
+                if (status[1].length() != 3)
+                    throw new IOException("Malformed status line: " + statusLine);
+                code = (int) PooledHttpTransport.parseNumber(status[1], 10, "status code");
+                if (code / 100 != 1 || code == 101)
+                    break;
+                //An interim response - 100 Continue, 103 Early Hints.  The final one follows it.
+                while (!this.readLine().isEmpty());
+            }
+            boolean http10 = "HTTP/1.0".equals(status[0]);
+
+            long contentLength = -1;
+            boolean chunked = false;
+            String connection = null;
+            String line;
+            while (!(line = this.readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0)
+                    continue;
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length"))
+                    contentLength = PooledHttpTransport.parseNumber(value, 10, "Content-Length");
+                else if (name.equalsIgnoreCase("Transfer-Encoding"))
+                    chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+                else if (name.equalsIgnoreCase("Connection"))
+                    connection = value.toLowerCase(Locale.ROOT);
+            }
+            if (connection != null && connection.contains("close"))
+                this.reusable = false;
+            if (http10 && (connection == null || !connection.contains("keep-alive")))
+                this.reusable = false;
+
+            if (code == 101)
+                //The connection now speaks some other protocol.
+                this.reusable = false;
+            if (code == 101 || code == 204 || code == 304 || "HEAD".equals(method))
+                return new Response(code, new byte[0]);
+            if (chunked)
+                return this.readChunked(code);
+            if (contentLength >= 0) {
+                if (contentLength > Integer.MAX_VALUE)
+                    throw new IOException("Response too large: " + contentLength);
+                byte[] b = new byte[(int) contentLength];
+                this.readFully(b);
+                return new Response(code, b);
+            }
+            //No length - the body runs until the server closes the connection.
+            this.reusable = false;
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = this.in.read(buf)) != -1)
+                b.write(buf, 0, n);
+            return new Response(code, b.toByteArray());
+        }//exchange(String, String, String, String, byte[])*/
+
+        /**
+         *  Read a chunked body.
+         *
+         *  @param code the status code.
+         *
+         *  @return the response.
+         *
+         *  @throws IOException if the body cannot be read.
+         */
+        private Response readChunked(int code) throws IOException {
+            byte[] body = new byte[8192];
+            int length = 0;
+            while (true) {
+                String size = this.readLine();
+                int semi = size.indexOf(';');
+                long chunkSize = PooledHttpTransport.parseNumber((semi < 0 ? size : size.substring(0, semi)).trim(), 16, "chunk size");
+                if (chunkSize > Integer.MAX_VALUE - length)
+                    throw new IOException("Response too large.");
+                int chunk = (int) chunkSize;
+                if (chunk == 0)
+                    break;
+                if (length + chunk > body.length)
+                    body = java.util.Arrays.copyOf(body, Math.max(body.length * 2, length + chunk));
+                this.readFully(body, length, chunk);
+                length += chunk;
+                this.readLine();
+            }
+            //Trailers.
+            while (!this.readLine().isEmpty());
+            return new Response(code, body, length);
+        }//readChunked(int)*/
+
+        /**
+         *  Fill an array from the input.
+         *
+         *  @param b the array.
+         *
+         *  @throws IOException if the stream ends first.
+         */
+        private void readFully(byte[] b) throws IOException {
+            this.readFully(b, 0, b.length);
+        }//readFully(byte[])*/
+
+        /**
+         *  Fill part of an array from the input.
+         *
+         *  @param b the array.
+         *  @param off where to start.
+         *  @param len how many bytes to read.
+         *
+         *  @throws IOException if the stream ends first.
+         */
+        private void readFully(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = this.in.read(b, off, len);
+                if (n == -1)
+                    throw new EOFException("Connection closed mid-response.");
+                off += n;
+                len -= n;
+            }
+        }//readFully(byte[], int, int)*/
+
+        /**
+         *  Read a CRLF terminated line of the response head.
+         *
+         *  @return the line, without the terminator.
+         *
+         *  @throws IOException if the stream ends first.
+         */
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder(64);
+            int c;
+            while ((c = this.in.read()) != -1) {
+                if (c == '\n') {
+                    int len = sb.length();
+                    if (len > 0 && sb.charAt(len - 1) == '\r')
+                        sb.setLength(len - 1);
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            throw new EOFException("Connection closed mid-response.");
+        }//readLine()*/
+
+        /**
+         *  Close the socket, quietly.
+         */
+        private void close() {
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                //Nothing to be done.
+            }
+        }//close()*/
+    }//Connection*/
+}//PooledHttpTransport*/
@@ -0,0 +1,127 @@
+package info.serveros.transport;
+
+import info.serveros.Credentials;
+import info.serveros.JSONable;
+import info.serveros.ServerosProvider;
+import info.serveros.exceptions.MessageException;
+import info.serveros.exceptions.ServerosException;
+import info.serveros.messages.TicketPresentation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ *  A small, non-blocking HTTP/1.1 server for a ServerosProvider.  TicketPresentations POSTed as
+ *  JSON to any path are answered with the EncipheredAck, as JSON; failures are answered with the
+ *  exception's status code and JSON body.  The Credentials in each acknowledged presentation are
+ *  handed to the hosting application before the acknowledgement is sent, so they are registered
+ *  by the time the consumer uses them.
+ */
+public class ProviderServer extends NioHttpServer {
+
+    /**
+     *  The Provider answering presentations.
+     */
+    public final ServerosProvider provider;
+
+    /**
+     *  Where the Credentials of acknowledged presentations are registered.
+     */
+    private final Consumer<Credentials> onCredentials;
+
+    /**
+     *  Constructor.  Uses the defaults, and one worker per processor.
+     *
+     *  @param provider the Provider answering presentations.
+     *  @param onCredentials where to register the Credentials of each acknowledged presentation.
+     *      Called on a worker, before the acknowledgement is sent.
+     *  @param address where to listen.  Port 0 picks a free port.
+     *
+     *  @throws IOException if the address cannot be bound.
+     */
+    public ProviderServer(ServerosProvider provider, Consumer<Credentials> onCredentials, InetSocketAddress address)
+                throws IOException
+            {
+        this(provider, onCredentials, address, null, NioHttpServer.DEFAULT_MAX_REQUEST_SIZE, NioHttpServer.DEFAULT_IDLE_TIMEOUT);
+    }//ProviderServer(ServerosProvider, Consumer, InetSocketAddress)*/
+
+    /**
+     *  Constructor.  The server doesn't accept connections until it's started.
+     *
+     *  @param provider the Provider answering presentations.
+     *  @param onCredentials where to register the Credentials of each acknowledged presentation.
+     *      Called on a worker, before the acknowledgement is sent.
+     *  @param address where to listen.  Port 0 picks a free port.
+     *  @param workers where to answer presentations, or null for one worker per processor.  A pool
+     *      supplied here is not shut down when the server is closed.
+     *  @param maxRequestSize the limit on the size of a request body, in bytes.
+     *  @param idleTimeout how long an idle connection is kept, in milliseconds.
+     *
+     *  @throws IOException if the address cannot be bound.
+     */
+    public ProviderServer(ServerosProvider provider, Consumer<Credentials> onCredentials, InetSocketAddress address
+                , Executor workers, int maxRequestSize, long idleTimeout
+            ) throws IOException {
+        super("serveros-provider", address, workers, maxRequestSize, idleTimeout);
+        if (onCredentials == null)
+            throw new IllegalArgumentException("Must have somewhere to register Credentials.");
+        this.provider = provider;
+        this.onCredentials = onCredentials;
+    }//ProviderServer(ServerosProvider, Consumer, InetSocketAddress, Executor, int, long)*/
+
+    /**
+     *  Start accepting connections.
+     *
+     *  @return this server.
+     */
+    @Override
+    public ProviderServer start() {
+        super.start();
+        return this;
+    }//start()*/
+
+    /**
+     *  Decide whether a method is accepted.
+     *
+     *  @param method the request method.
+     *
+     *  @return true for POST.
+     */
+    @Override
+    protected boolean accepts(String method) {
+        return "POST".equals(method);
+    }//accepts(String)*/
+
+    /**
+     *  Answer a presentation.  Runs on a worker.
+     *
+     *  @param method the request method.
+     *  @param target the request target - the path and query.
+     *  @param body the request body.
+     *  @param keepAlive whether the connection stays open afterwards.
+     *
+     *  @return the complete HTTP response.
+     */
+    @Override
+    protected byte[] answer(String method, String target, byte[] body, boolean keepAlive) {
+        TicketPresentation p;
+        try {
+            p = new TicketPresentation(JSONable.unJSON(new ByteArrayInputStream(body)));
+        } catch (RuntimeException e) {
+            return NioHttpServer.error(new ServerosException("Malformed TicketPresentation.", 400, e), keepAlive);
+        }
+        try {
+            ServerosProvider.Acknowledgement a = this.provider.acknowledge(p);
+            this.onCredentials.accept(a.getCredentials());
+            return NioHttpServer.response(200, a.getAck().toJSONBytes(), keepAlive);
+        } catch (ServerosException e) {
+            return NioHttpServer.error(e, keepAlive);
+        } catch (java.security.GeneralSecurityException e) {
+            return NioHttpServer.error(new MessageException("The TicketPresentation could not be decrypted.", e), keepAlive);
+        } catch (RuntimeException e) {
+            return NioHttpServer.error(new ServerosException(e), keepAlive);
+        }
+    }//answer(String, String, byte[], boolean)*/
+}//ProviderServer*/
@@ -0,0 +1,85 @@
+package info.serveros.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *  An HTTP response - the status code and the body, fully read.
+ */
+public class Response {
+
+    /**
+     *  The status code.
+     */
+    public final int status;
+
+    /**
+     *  The body.
+     */
+    private final byte[] body;
+
+    /**
+     *  The number of bytes of the body array in use.
+     */
+    private final int length;
+
+    /**
+     *  Constructor.
+     *
+     *  @param status the status code.
+     *  @param body the body.  Not copied.
+     *  @param length the number of bytes of the body array in use.
+     */
+    public Response(int status, byte[] body, int length) {
+        this.status = status;
+        this.body = body;
+        this.length = length;
+    }//Response(int, byte[], int)*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param status the status code.
+     *  @param body the body.  Not copied.
+     */
+    public Response(int status, byte[] body) {
+        this(status, body, body.length);
+    }//Response(int, byte[])*/
+
+    /**
+     *  Decide if the request succeeded.
+     *
+     *  @return true for any 2xx status.
+     */
+    public boolean isSuccess() {
+        return this.status / 100 == 2;
+    }//isSuccess()*/
+
+    /**
+     *  Get the length of the body.
+     *
+     *  @return the number of bytes in the body.
+     */
+    public int getLength() {
+        return this.length;
+    }//getLength()*/
+
+    /**
+     *  Read the body.
+     *
+     *  @return a stream over the body bytes.
+     */
+    public InputStream getBody() {
+        return new ByteArrayInputStream(this.body, 0, this.length);
+    }//getBody()*/
+
+    /**
+     *  Read the body as text.
+     *
+     *  @return the body, decoded as UTF-8.
+     */
+    public String getBodyAsString() {
+        return new String(this.body, 0, this.length, StandardCharsets.UTF_8);
+    }//getBodyAsString()*/
+}//Response*/
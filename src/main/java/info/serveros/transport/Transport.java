@@ -0,0 +1,32 @@
+package info.serveros.transport;
+
+/**
+ *  How a ServerosConsumer talks HTTP to the Authentication Master and to Service Providers.
+ *  Implementations must be thread safe.
+ */
+public interface Transport {
+
+    /**
+     *  Perform a GET.
+     *
+     *  @param url the absolute URL to get.
+     *
+     *  @return the response, whatever its status code.
+     *
+     *  @throws java.io.IOException if the request cannot be made, or the response cannot be read.
+     */
+    Response get(String url) throws java.io.IOException;
+
+    /**
+     *  Perform a POST.
+     *
+     *  @param url the absolute URL to post to.
+     *  @param contentType the type of the request body.
+     *  @param body the request body.
+     *
+     *  @return the response, whatever its status code.
+     *
+     *  @throws java.io.IOException if the request cannot be made, or the response cannot be read.
+     */
+    Response post(String url, String contentType, byte[] body) throws java.io.IOException;
+}//Transport*/
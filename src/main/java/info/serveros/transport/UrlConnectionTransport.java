@@ -0,0 +1,118 @@
+package info.serveros.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ *  A blocking Transport on HttpURLConnection - the default.  It honours the JDK's proxy settings
+ *  (http.proxyHost, ProxySelector) and follows redirects, and since every response is read to the
+ *  end and the connection is never disconnected, the JDK's keep-alive cache reuses connections
+ *  between requests.
+ */
+public class UrlConnectionTransport implements Transport {
+
+    /**
+     *  Connect and read timeout, in milliseconds.  0 waits forever.
+     */
+    public final int timeout;
+
+    /**
+     *  Constructor.  Waits as long as it takes.
+     */
+    public UrlConnectionTransport() {
+        this(0);
+    }//UrlConnectionTransport()*/
+
+    /**
+     *  Constructor.
+     *
+     *  @param timeout connect and read timeout, in milliseconds.  0 waits forever.
+     */
+    public UrlConnectionTransport(int timeout) {
+        if (timeout < 0)
+            throw new IllegalArgumentException("Timeout can't be negative: " + timeout);
+        this.timeout = timeout;
+    }//UrlConnectionTransport(int)*/
+
+    /**
+     *  Perform a GET.
+     *
+     *  @param url the absolute URL to get.
+     *
+     *  @return the response, whatever its status code.
+     *
+     *  @throws IOException if the request cannot be made, or the response cannot be read.
+     */
+    @Override
+    public Response get(String url) throws IOException {
+        return this.read(this.open(url, "GET"));
+    }//get(String)*/
+
+    /**
+     *  Perform a POST.
+     *
+     *  @param url the absolute URL to post to.
+     *  @param contentType the type of the request body.
+     *  @param body the request body.
+     *
+     *  @return the response, whatever its status code.
+     *
+     *  @throws IOException if the request cannot be made, or the response cannot be read.
+     */
+    @Override
+    public Response post(String url, String contentType, byte[] body) throws IOException {
+        HttpURLConnection conn = this.open(url, "POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", contentType);
+        conn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+        return this.read(conn);
+    }//post(String, String, byte[])*/
+
+    /**
+     *  Open a connection.
+     *
+     *  @param url the absolute URL.
+     *  @param method the request method.
+     *
+     *  @return the connection, not yet connected.
+     *
+     *  @throws IOException if the URL is bad.
+     */
+    private HttpURLConnection open(String url, String method) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(this.timeout);
+        conn.setReadTimeout(this.timeout);
+        return conn;
+    }//open(String, String)*/
+
+    /**
+     *  Read a response to the end, so the connection can go back to the keep-alive cache.
+     *
+     *  @param conn the connection, with its request sent.
+     *
+     *  @return the response.
+     *
+     *  @throws IOException if the response cannot be read.
+     */
+    private Response read(HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+        InputStream in = status / 100 == 2 ? conn.getInputStream() : conn.getErrorStream();
+        if (in == null)
+            return new Response(status, new byte[0]);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.max(conn.getContentLength(), 256));
+        try (InputStream i = in) {
+            byte[] b = new byte[4096];
+            for (int n; (n = i.read(b)) != -1; )
+                body.write(b, 0, n);
+        }
+        return new Response(status, body.toByteArray());
+    }//read(HttpURLConnection)*/
+}//UrlConnectionTransport*/